@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * One operation of a batch request: an http method, the path of the single route it stands for, and the parameters that
+ * route takes as query parameters, e.g. {"method": "PUT", "path": "/scout/5/req", "body": {"name": "4a", "rank": "Tenderfoot"}}.
+ * Operations are authorized one by one against the caller that authenticated the batch, by the same rules as the single routes.
+ */
+public class BatchOperation {
+	private static final int MAX_OPERATIONS = Integer.getInteger("scouttrack.batch.maxOperations", 100);
+	private static final int MAX_PARAMETERS = 8;
+
+	private final String method;
+	private final String path;
+	private final Map<String, String> params;
+
+	private BatchOperation(String method, String path, Map<String, String> params) {
+		this.method = method;
+		this.path = path;
+		this.params = params;
+	}
+
+	/**
+	 * Reads the Json array of operations in a batch request
+	 * @param reader reader over the request body
+	 * @return the operations, in order
+	 * @throws InvalidJsonDataException thrown if the batch is malformed, empty or too long
+	 */
+	public static List<BatchOperation> readAll(JsonReader reader) throws InvalidJsonDataException {
+		List<BatchOperation> operations = new ArrayList<BatchOperation>();
+		try {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				if (operations.size() == MAX_OPERATIONS) throw new InvalidJsonDataException("More than " + MAX_OPERATIONS + " operations");
+				operations.add(read(reader));
+			}
+			reader.endArray();
+		} catch (IOException | IllegalStateException e) {
+			throw new InvalidJsonDataException();		//Malformed Json or a value of the wrong type
+		}
+		if (operations.isEmpty()) throw new InvalidJsonDataException("No operations");
+		return operations;
+	}
+
+	/**
+	 * Runs the operation as the caller that authenticated the batch
+	 * @param context the caller
+	 * @param tokenManager authorizes troop operations
+	 * @param sql2o the Sql2o database object
+	 * @throws AuthenticationException thrown if the caller may not perform the operation
+	 * @throws InvalidJsonDataException thrown if the operation is not supported or a parameter is missing or invalid
+	 * @throws NoRecordFoundException thrown if a named requirement, merit badge, rank or troop is not found
+	 * @throws Sql2oException thrown by database error
+	 */
+	public void run(RequestContext context, TokenManager tokenManager, Sql2o sql2o) throws AuthenticationException, InvalidJsonDataException, NoRecordFoundException, Sql2oException {
+		String[] parts = path.split("/");	//"", resource, id, field
+		if (parts.length != 4 || !parts[0].isEmpty()) throw unsupported();
+		int id = Integer.parseInt(parts[2]);
+		TokenPrincipal principal = context.getPrincipal();
+		switch (parts[1]) {
+		case "scout":
+			if (principal.getType() != ScoutTrackToken.SCOUT_TYPE || principal.getId() != id) throw new AuthenticationException();
+			runScout(parts[3], context.scout(), sql2o);
+			break;
+		case "troop":
+			if (principal.getType() != ScoutTrackToken.LEADER_TYPE) throw new AuthenticationException();
+			tokenManager.authorizeTroop(principal.getId(), id);
+			runTroop(parts[3], new Troop(id, sql2o), sql2o);
+			break;
+		default:
+			throw unsupported();
+		}
+	}
+
+	private void runScout(String field, Scout scout, Sql2o sql2o) throws InvalidJsonDataException, NoRecordFoundException, Sql2oException {
+		switch (method + " " + field) {
+		case "PUT req":
+			scout.addReq(param("name"), param("rank"));
+			break;
+		case "DELETE req":
+			scout.destroyReq(param("name"), param("rank"));
+			break;
+		case "PUT mb":
+			scout.addMb(param("mbName"));
+			break;
+		case "DELETE mb":
+			scout.destroyMb(param("meritbadgeName"));
+			break;
+		case "PUT name":
+			scout.updateName(new ScoutMapper(sql2o).validateName(param("name")));
+			break;
+		case "PUT email":
+			scout.updateEmail(new ScoutMapper(sql2o).validateEmail(param("email")));
+			break;
+		case "PUT age":
+			scout.updateAge(new ScoutMapper(sql2o).validateAge(Integer.parseInt(param("age"))));
+			break;
+		case "PUT rank":
+			scout.updateRank(param("rank"));
+			break;
+		case "PUT troop":
+			scout.updateTroop(param("troop"));
+			break;
+		default:
+			throw unsupported();
+		}
+	}
+
+	private void runTroop(String field, Troop troop, Sql2o sql2o) throws InvalidJsonDataException, NoRecordFoundException, Sql2oException {
+		switch (method + " " + field) {
+		case "PUT req":
+			troop.signOffRequirement(param("name"), param("rank"), new TroopMapper(sql2o).validateScoutIDs(param("scouts")));
+			break;
+		case "PUT mb":
+			troop.signOffMeritbadge(param("mbName"), new TroopMapper(sql2o).validateScoutIDs(param("scouts")));
+			break;
+		case "PUT name":
+			troop.updateName(new TroopMapper(sql2o).validateName(param("name")));
+			break;
+		default:
+			throw unsupported();
+		}
+	}
+
+	/**
+	 * Gets a required parameter of the operation
+	 */
+	private String param(String name) throws InvalidJsonDataException {
+		String value = params.get(name);
+		if (value == null) throw new InvalidJsonDataException("Missing " + name + " for " + method + " " + path);
+		return value;
+	}
+
+	private InvalidJsonDataException unsupported() {
+		return new InvalidJsonDataException("Unsupported operation " + method + " " + path);
+	}
+
+	/**
+	 * Reads one operation object
+	 */
+	private static BatchOperation read(JsonReader reader) throws IOException, InvalidJsonDataException {
+		String method = null;
+		String path = null;
+		Map<String, String> params = new HashMap<String, String>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String field = reader.nextName();
+			if (field.equals("method")) method = reader.nextString().toUpperCase();
+			else if (field.equals("path")) path = reader.nextString();
+			else if (field.equals("body")) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (params.size() == MAX_PARAMETERS) throw new InvalidJsonDataException("More than " + MAX_PARAMETERS + " parameters");
+					params.put(reader.nextName(), reader.nextString());
+				}
+				reader.endObject();
+			}
+			else reader.skipValue();
+		}
+		reader.endObject();
+		if (method == null || path == null) throw new InvalidJsonDataException("Operations need a method and path");
+		return new BatchOperation(method, path, params);
+	}
+}
@@ -0,0 +1,23 @@
+
+public class BatchResult {
+	private int status;
+	private String body;
+
+	/**
+	 * Constructs outcome of one operation of a batch request
+	 * @param status http status the operation would have had as a single request
+	 * @param body reply the operation would have had as a single request
+	 */
+	public BatchResult(int status, String body) {
+		this.status = status;
+		this.body = body;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,161 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Writes rows to a PostgreSQL COPY ... FROM STDIN (FORMAT binary) operation. Values are encoded straight into a
+ * fixed size buffer that is handed to the server whenever it fills, so no per-row strings or objects are built.
+ */
+public class BinaryCopyWriter implements AutoCloseable {
+	private static final byte[] HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0,	//Signature
+			0, 0, 0, 0,		//Flags
+			0, 0, 0, 0};	//Header extension length
+	private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+	private final CopyIn copy;
+	private final byte[] buffer;
+	private int position;
+	private boolean finished;
+
+	/**
+	 * Starts a binary COPY on a connection
+	 * @param jdbcConnection connection (or pooled handle of one) to copy over; its transaction is used
+	 * @param table table to copy into
+	 * @param columns columns in the order values are written
+	 * @throws SQLException thrown if the COPY can not be started
+	 */
+	public BinaryCopyWriter(Connection jdbcConnection, String table, String... columns) throws SQLException {
+		this(jdbcConnection, table, DEFAULT_BUFFER_SIZE, columns);
+	}
+
+	/**
+	 * Starts a binary COPY on a connection
+	 * @param jdbcConnection connection (or pooled handle of one) to copy over; its transaction is used
+	 * @param table table to copy into
+	 * @param bufferSize bytes buffered before they are sent to the server
+	 * @param columns columns in the order values are written
+	 * @throws SQLException thrown if the COPY can not be started
+	 */
+	public BinaryCopyWriter(Connection jdbcConnection, String table, int bufferSize, String... columns) throws SQLException {
+		String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN (FORMAT binary)";
+		this.copy = jdbcConnection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+		this.buffer = new byte[Math.max(bufferSize, 64)];
+		write(HEADER, 0, HEADER.length);
+	}
+
+	/**
+	 * Starts a row
+	 * @param fields number of values the row will contain
+	 * @throws SQLException thrown if buffered data can not be sent
+	 */
+	public void startRow(int fields) throws SQLException {
+		ensure(2);
+		putShort(fields);
+	}
+
+	/**
+	 * Writes an int4 value
+	 * @param value the value
+	 * @throws SQLException thrown if buffered data can not be sent
+	 */
+	public void writeInt(int value) throws SQLException {
+		ensure(8);
+		putInt(4);
+		putInt(value);
+	}
+
+	/**
+	 * Writes a text value (also valid for varchar columns)
+	 * @param value the value, or null
+	 * @throws SQLException thrown if buffered data can not be sent
+	 */
+	public void writeText(String value) throws SQLException {
+		if (value == null) writeNull();
+		else writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a bytea value
+	 * @param value the value, or null
+	 * @throws SQLException thrown if buffered data can not be sent
+	 */
+	public void writeBytes(byte[] value) throws SQLException {
+		if (value == null) {
+			writeNull();
+			return;
+		}
+		ensure(4);
+		putInt(value.length);
+		write(value, 0, value.length);
+	}
+
+	/**
+	 * Writes a null value
+	 * @throws SQLException thrown if buffered data can not be sent
+	 */
+	public void writeNull() throws SQLException {
+		ensure(4);
+		putInt(-1);
+	}
+
+	/**
+	 * Sends the remaining rows and completes the COPY
+	 * @return number of rows copied
+	 * @throws SQLException thrown if the server rejects the data
+	 */
+	public long finish() throws SQLException {
+		ensure(2);
+		putShort(-1);	//File trailer
+		flush();
+		finished = true;
+		return copy.endCopy();
+	}
+
+	/**
+	 * Cancels the COPY if it was not finished
+	 */
+	public void close() {
+		if (finished || !copy.isActive()) return;
+		try {
+			copy.cancelCopy();
+		} catch (SQLException e) {
+			System.out.println(e);
+		}
+	}
+
+	private void write(byte[] bytes, int offset, int length) throws SQLException {
+		while (length > 0) {
+			if (position == buffer.length) flush();
+			int chunk = Math.min(length, buffer.length - position);
+			System.arraycopy(bytes, offset, buffer, position, chunk);
+			position += chunk;
+			offset += chunk;
+			length -= chunk;
+		}
+	}
+
+	private void ensure(int bytes) throws SQLException {
+		if (buffer.length - position < bytes) flush();
+	}
+
+	private void flush() throws SQLException {
+		if (position == 0) return;
+		copy.writeToCopy(buffer, 0, position);
+		position = 0;
+	}
+
+	private void putShort(int value) {
+		buffer[position++] = (byte) (value >>> 8);
+		buffer[position++] = (byte) value;
+	}
+
+	private void putInt(int value) {
+		buffer[position++] = (byte) (value >>> 24);
+		buffer[position++] = (byte) (value >>> 16);
+		buffer[position++] = (byte) (value >>> 8);
+		buffer[position++] = (byte) value;
+	}
+}
@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * Compact token for internal clients, an alternative to the JWT form of ScoutTrackToken. The token is a fixed 43 byte layout,
+ * base64url encoded without padding into 58 characters:
+ *
+ * <pre>
+ *  0  version     1 byte
+ *  1  key number  8 bytes, the signing key's kid without its "k" prefix
+ *  9  user id     4 bytes
+ * 13  user type   1 byte
+ * 14  use         1 byte, 0 for an access token and 1 for a refresh token
+ * 15  expiration  4 bytes, unsigned seconds since the epoch
+ * 19  jti         8 bytes
+ * 27  HMAC-SHA256 of bytes 0-26, truncated to 16 bytes
+ * </pre>
+ *
+ * Inspecting a token decodes it into a per-thread buffer and reuses a per-thread Mac, so nothing but the resulting principal
+ * is allocated. Compact tokens never contain '.', which tells them apart from JWTs.
+ */
+public class BinaryToken {
+	private static final byte VERSION = 1;
+	private static final int BODY_LENGTH = 27;
+	private static final int MAC_LENGTH = 16;
+	private static final int TOKEN_LENGTH = BODY_LENGTH + MAC_LENGTH;
+	private static final int ENCODED_LENGTH = (TOKEN_LENGTH * 4 + 2) / 3;
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	private static final int[] DECODE = new int[128];
+	static {
+		for (int i = 0; i < DECODE.length; i++) DECODE[i] = -1;
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+		for (int i = 0; i < alphabet.length(); i++) DECODE[alphabet.charAt(i)] = i;
+	}
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Checks if a token is in the compact form
+	 * @param tokenString the serialized token
+	 * @return true for a compact token, false for a JWT
+	 */
+	public static boolean isCompact(String tokenString) {
+		return tokenString.length() == ENCODED_LENGTH && tokenString.indexOf('.') < 0;
+	}
+
+	/**
+	 * Builds a compact token
+	 * @param key secret of the signing key
+	 * @param keyNumber number of the signing key
+	 * @param userID user's id (from database)
+	 * @param userType user's account type (ScoutTrackToken.SCOUT_TYPE, ScoutTrackToken.LEADER_TYPE)
+	 * @param refresh true for a refresh token
+	 * @param expiresAt time the token expires in milliseconds since the epoch
+	 * @param jti id of the token
+	 * @return the base64url encoded token
+	 * @throws GeneralSecurityException thrown if the token can not be signed
+	 */
+	public static String encode(SecretKey key, long keyNumber, int userID, int userType, boolean refresh, long expiresAt, long jti) throws GeneralSecurityException {
+		ByteBuffer token = ByteBuffer.allocate(TOKEN_LENGTH);
+		token.put(VERSION).putLong(keyNumber).putInt(userID).put((byte) userType).put((byte) (refresh ? 1 : 0))
+				.putInt((int) (expiresAt / 1000)).putLong(jti);
+		Mac mac = Mac.getInstance(MAC_ALGORITHM);
+		mac.init(key);
+		mac.update(token.array(), 0, BODY_LENGTH);
+		token.put(mac.doFinal(), 0, MAC_LENGTH);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+	}
+
+	/**
+	 * Inspects the signature and expiration time of a compact token
+	 * @param keys the keys tokens are signed with
+	 * @param tokenString the serialized token
+	 * @return the user the token was issued to
+	 * @throws AuthenticationException thrown if the token is malformed, signed by an unknown key, forged or expired
+	 */
+	public static TokenPrincipal inspect(KeyRing keys, String tokenString) throws AuthenticationException {
+		if (!isCompact(tokenString)) throw new AuthenticationException();
+		Scratch scratch = SCRATCH.get();
+		byte[] token = scratch.token;
+		decode(tokenString, token);
+		if (token[0] != VERSION) throw new AuthenticationException();
+
+		long keyNumber = readLong(token, 1);
+		SecretKey key = keys.secretKey(keyNumber);
+		if (key == null) throw new AuthenticationException();
+		try {
+			if (scratch.key != key) {		//Initializing the Mac is skipped while the same key signs
+				scratch.mac.init(key);
+				scratch.key = key;
+			}
+			scratch.mac.update(token, 0, BODY_LENGTH);
+			scratch.mac.doFinal(scratch.digest, 0);
+		} catch (GeneralSecurityException e) {
+			scratch.key = null;
+			throw new AuthenticationException();
+		}
+		int difference = 0;
+		for (int i = 0; i < MAC_LENGTH; i++) difference |= token[BODY_LENGTH + i] ^ scratch.digest[i];		//Constant time comparison
+		if (difference != 0) throw new AuthenticationException();
+
+		long expiresAt = (readInt(token, 15) & 0xffffffffL) * 1000;
+		if (expiresAt <= System.currentTimeMillis()) throw new AuthenticationException();
+		return new TokenPrincipal(readInt(token, 9), token[13], readLong(token, 19), expiresAt, token[14] == 1);
+	}
+
+	/**
+	 * Decodes unpadded base64url into a buffer of TOKEN_LENGTH bytes
+	 */
+	private static void decode(String encoded, byte[] out) throws AuthenticationException {
+		int bits = 0;
+		int count = 0;
+		int o = 0;
+		for (int i = 0; i < ENCODED_LENGTH; i++) {
+			char c = encoded.charAt(i);
+			int value = c < DECODE.length ? DECODE[c] : -1;
+			if (value < 0) throw new AuthenticationException();
+			bits = (bits << 6) | value;
+			count += 6;
+			if (count >= 8) {
+				count -= 8;
+				out[o++] = (byte) (bits >>> count);
+			}
+		}
+	}
+
+	private static int readInt(byte[] b, int offset) {
+		return (b[offset] & 0xff) << 24 | (b[offset + 1] & 0xff) << 16 | (b[offset + 2] & 0xff) << 8 | (b[offset + 3] & 0xff);
+	}
+
+	private static long readLong(byte[] b, int offset) {
+		return (readInt(b, offset) & 0xffffffffL) << 32 | (readInt(b, offset + 4) & 0xffffffffL);
+	}
+
+	/**
+	 * Buffers and Mac reused by every token one thread inspects
+	 */
+	private static class Scratch {
+		private final byte[] token = new byte[TOKEN_LENGTH];
+		private final byte[] digest;
+		private final Mac mac;
+		private SecretKey key;
+
+		private Scratch() {
+			try {
+				mac = Mac.getInstance(MAC_ALGORITHM);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+			}
+			digest = new byte[mac.getMacLength()];
+		}
+	}
+}
@@ -0,0 +1,43 @@
+
+public class CacheStats {
+	private String name;
+	private long hits;
+	private long misses;
+	private long size;
+	private double hitRate;
+
+	/**
+	 * Constructs snapshot of a cache's effectiveness
+	 * @param name name of the cache
+	 * @param hits lookups answered by the cache
+	 * @param misses lookups that had to build or load their value
+	 * @param size number of entries held
+	 */
+	public CacheStats(String name, long hits, long misses, long size) {
+		this.name = name;
+		this.hits = hits;
+		this.misses = misses;
+		this.size = size;
+		this.hitRate = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public double getHitRate() {
+		return hitRate;
+	}
+}
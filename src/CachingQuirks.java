@@ -0,0 +1,69 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sql2o.quirks.PostgresQuirks;
+import org.sql2o.quirks.parameterparsing.SqlParameterParsingStrategy;
+
+/**
+ * PostgreSQL quirks that remember how each SQL statement's named parameters were parsed, so sql2o only parses
+ * a statement the first time it is used.
+ */
+public class CachingQuirks extends PostgresQuirks {
+	private static final int MAX_PARSED_STATEMENTS = 512;
+
+	private final SqlParameterParsingStrategy parser = super.getSqlParameterParsingStrategy();
+	private final SqlParameterParsingStrategy cachingParser = this::parseSql;
+	private final ConcurrentHashMap<String, ParsedSql> parsed = new ConcurrentHashMap<String, ParsedSql>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public SqlParameterParsingStrategy getSqlParameterParsingStrategy() {
+		return cachingParser;
+	}
+
+	/**
+	 * Gets hit and miss counts of the parsed statement cache
+	 * @return the cache's statistics
+	 */
+	public CacheStats getStats() {
+		return new CacheStats("parsed queries", hits.get(), misses.get(), parsed.size());
+	}
+
+	/**
+	 * Parses named parameters out of a statement, reusing the result of an earlier parse of the same text
+	 * @param sql statement with named parameters
+	 * @param paramNameToIdxMap map filled with the jdbc indexes of each named parameter
+	 * @return the statement with jdbc placeholders
+	 */
+	private String parseSql(String sql, Map<String, List<Integer>> paramNameToIdxMap) {
+		ParsedSql cached = parsed.get(sql);
+		if (cached != null) {
+			hits.incrementAndGet();
+			paramNameToIdxMap.putAll(cached.parameters);
+			return cached.sql;
+		}
+
+		misses.incrementAndGet();
+		Map<String, List<Integer>> parameters = new HashMap<String, List<Integer>>();
+		String jdbcSql = parser.parseSql(sql, parameters);
+		for (Map.Entry<String, List<Integer>> entry : parameters.entrySet()) entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		if (parsed.size() < MAX_PARSED_STATEMENTS) parsed.putIfAbsent(sql, new ParsedSql(jdbcSql, parameters));	//Ad hoc statements beyond the cap are parsed every time
+
+		paramNameToIdxMap.putAll(parameters);
+		return jdbcSql;
+	}
+
+	private static final class ParsedSql {
+		private final String sql;
+		private final Map<String, List<Integer>> parameters;
+
+		private ParsedSql(String sql, Map<String, List<Integer>> parameters) {
+			this.sql = sql;
+			this.parameters = parameters;
+		}
+	}
+}
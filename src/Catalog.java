@@ -0,0 +1,209 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+/**
+ * Immutable snapshot of the rank, requirement and merit badge tables. The snapshot holds every row, so a name
+ * missing from it is a cached negative lookup. Refreshing loads a new snapshot and swaps it in atomically;
+ * readers keep using the snapshot they already hold.
+ */
+public class Catalog {
+	private static final AtomicReference<Catalog> CURRENT = new AtomicReference<Catalog>();
+
+	private final Map<String, Integer> rankIDs;
+	private final Map<Integer, String> rankNames;
+	private final Map<String, Integer> meritbadgeIDs;
+	private final Map<Integer, String> meritbadgeNames;
+	private final Map<Integer, Map<String, Integer>> requirementIDs;	//rank id -> requirement name -> requirement id
+	private final Map<Integer, RequirementObject> requirements;
+	private final Map<Integer, Integer> requirementRanks;
+	private final long loadedAt;
+
+	private Catalog(List<CatalogRow> ranks, List<CatalogRow> meritbadges, List<CatalogRow> reqs) {
+		Map<String, Integer> rankIDs = new HashMap<String, Integer>();
+		Map<Integer, String> rankNames = new HashMap<Integer, String>();
+		for (CatalogRow rank : ranks) {
+			rankIDs.put(rank.name, rank.id);
+			rankNames.put(rank.id, rank.name);
+		}
+
+		Map<String, Integer> meritbadgeIDs = new HashMap<String, Integer>();
+		Map<Integer, String> meritbadgeNames = new HashMap<Integer, String>();
+		for (CatalogRow mb : meritbadges) {
+			meritbadgeIDs.put(mb.name, mb.id);
+			meritbadgeNames.put(mb.id, mb.name);
+		}
+
+		Map<Integer, Map<String, Integer>> requirementIDs = new HashMap<Integer, Map<String, Integer>>();
+		Map<Integer, RequirementObject> requirements = new HashMap<Integer, RequirementObject>();
+		Map<Integer, Integer> requirementRanks = new HashMap<Integer, Integer>();
+		for (CatalogRow req : reqs) {
+			requirementIDs.computeIfAbsent(req.rankid, k -> new HashMap<String, Integer>()).put(req.name, req.id);
+			requirements.put(req.id, new RequirementObject(req.name, rankNames.get(req.rankid)));
+			requirementRanks.put(req.id, req.rankid);
+		}
+		for (Map.Entry<Integer, Map<String, Integer>> entry : requirementIDs.entrySet()) entry.setValue(Collections.unmodifiableMap(entry.getValue()));
+
+		this.rankIDs = Collections.unmodifiableMap(rankIDs);
+		this.rankNames = Collections.unmodifiableMap(rankNames);
+		this.meritbadgeIDs = Collections.unmodifiableMap(meritbadgeIDs);
+		this.meritbadgeNames = Collections.unmodifiableMap(meritbadgeNames);
+		this.requirementIDs = Collections.unmodifiableMap(requirementIDs);
+		this.requirements = Collections.unmodifiableMap(requirements);
+		this.requirementRanks = Collections.unmodifiableMap(requirementRanks);
+		this.loadedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Gets the current catalog snapshot
+	 * @return the catalog, or null if it has not been loaded (callers fall back to the database)
+	 */
+	public static Catalog current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Loads the catalog tables and swaps the new snapshot in
+	 * @param sql2o Sql2o database object
+	 * @return the new snapshot
+	 * @throws Sql2oException thrown if database error
+	 */
+	public static Catalog refresh(Sql2o sql2o) throws Sql2oException {
+		Catalog catalog;
+		try (Connection conn = sql2o.open()) {
+			List<CatalogRow> ranks = conn.createQuery("SELECT id, name FROM " + DatabaseNames.RANK_TABLE).executeAndFetch(CatalogRow.class);
+			List<CatalogRow> meritbadges = conn.createQuery("SELECT id, name FROM " + DatabaseNames.MB_TABLE).executeAndFetch(CatalogRow.class);
+			List<CatalogRow> reqs = conn.createQuery("SELECT id, name, rankid FROM " + DatabaseNames.REQ_TABLE).executeAndFetch(CatalogRow.class);
+			catalog = new Catalog(ranks, meritbadges, reqs);
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		CURRENT.set(catalog);
+		return catalog;
+	}
+
+	/**
+	 * Refreshes the catalog periodically on a background thread. A failed refresh keeps the previous snapshot.
+	 * @param sql2o Sql2o database object
+	 * @param period time between refreshes in milliseconds
+	 */
+	public static void scheduleRefresh(Sql2o sql2o, long period) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "catalog-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				refresh(sql2o);
+			} catch (Sql2oException e) {
+				//Already logged, keep serving the previous snapshot
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Retrieves id of rank
+	 * @param rankName name of the rank
+	 * @return id of the rank
+	 * @throws NoRecordFoundException thrown if no rank has that name
+	 */
+	public int idOfRank(String rankName) throws NoRecordFoundException {
+		return found(rankIDs.get(rankName));
+	}
+
+	/**
+	 * Retrieves name of rank
+	 * @param rankID id of the rank
+	 * @return name of the rank
+	 * @throws NoRecordFoundException thrown if no rank has that id
+	 */
+	public String nameOfRank(int rankID) throws NoRecordFoundException {
+		return found(rankNames.get(rankID));
+	}
+
+	/**
+	 * Retrieves id of merit badge
+	 * @param mbName name of the merit badge
+	 * @return id of the merit badge
+	 * @throws NoRecordFoundException thrown if no merit badge has that name
+	 */
+	public int idOfMeritbadge(String mbName) throws NoRecordFoundException {
+		return found(meritbadgeIDs.get(mbName));
+	}
+
+	/**
+	 * Retrieves name of merit badge
+	 * @param mbID id of the merit badge
+	 * @return name of the merit badge
+	 * @throws NoRecordFoundException thrown if no merit badge has that id
+	 */
+	public String nameOfMeritbadge(int mbID) throws NoRecordFoundException {
+		return found(meritbadgeNames.get(mbID));
+	}
+
+	/**
+	 * Retrieves id of requirement
+	 * @param reqName name of the requirement
+	 * @param rankID id of the rank the requirement is in
+	 * @return id of the requirement
+	 * @throws NoRecordFoundException thrown if the rank has no requirement with that name
+	 */
+	public int idOfRequirement(String reqName, int rankID) throws NoRecordFoundException {
+		Map<String, Integer> rankReqs = requirementIDs.get(rankID);
+		if (rankReqs == null) throw new NoRecordFoundException();
+		return found(rankReqs.get(reqName));
+	}
+
+	/**
+	 * Retrieves requirement name and rank name
+	 * @param reqID id of the requirement
+	 * @return the requirement
+	 * @throws NoRecordFoundException thrown if no requirement has that id
+	 */
+	public RequirementObject requirement(int reqID) throws NoRecordFoundException {
+		return found(requirements.get(reqID));
+	}
+
+	/**
+	 * Retrieves id of the rank a requirement is in
+	 * @param reqID id of the requirement
+	 * @return id of the requirement's rank
+	 * @throws NoRecordFoundException thrown if no requirement has that id
+	 */
+	public int rankOfRequirement(int reqID) throws NoRecordFoundException {
+		return found(requirementRanks.get(reqID));
+	}
+
+	/**
+	 * Gets time the snapshot was loaded
+	 * @return load time in milliseconds since the epoch
+	 */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	private static <T> T found(T value) throws NoRecordFoundException {
+		if (value == null) throw new NoRecordFoundException();
+		return value;
+	}
+
+	/**
+	 * Row of a catalog table
+	 */
+	public static class CatalogRow {
+		private int id;
+		private String name;
+		private int rankid;
+	}
+}
@@ -0,0 +1,397 @@
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Bounded pool of physical PostgreSQL connections. Connections handed out are proxies whose close() returns
+ * the physical connection to the pool and whose prepared statements are cached per physical connection
+ * (see StatementCache). A housekeeping thread evicts idle connections above the minimum size
+ * and reports connections that have been held longer than the leak threshold.
+ */
+public class ConnectionPool implements DataSource {
+	private final static long HOUSEKEEPING_PERIOD = 5000;		//In milliseconds
+	private final static long VALIDATION_IDLE_TIME = 30000;		//Idle time after which a connection is validated on checkout (milliseconds)
+	private final static int VALIDATION_TIMEOUT = 2;			//In seconds
+	private final static int STATEMENT_CACHE_SIZE = 64;			//Prepared statements kept open per connection
+
+	private final String url;
+	private final String username;
+	private final String password;
+
+	private final int minSize;
+	private final int maxSize;
+	private final long acquireTimeout;
+	private final long idleTimeout;
+	private final long leakThreshold;
+
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+	private final Set<PooledConnection> leased = ConcurrentHashMap.newKeySet();
+	private final Semaphore permits;
+	private final ScheduledExecutorService housekeeper;
+
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong evicted = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong leaks = new AtomicLong();
+	private final AtomicLong waitNanos = new AtomicLong();
+	private final AtomicLong statementHits = new AtomicLong();
+	private final AtomicLong statementMisses = new AtomicLong();
+
+	private volatile PrintWriter logWriter;
+	private volatile boolean closed;
+
+	/**
+	 * Constructs a connection pool and opens the minimum number of connections
+	 * @param url JDBC url of the database
+	 * @param username database user
+	 * @param password database user's password
+	 * @param minSize number of connections kept open while idle
+	 * @param maxSize maximum number of connections open at once
+	 * @param acquireTimeout milliseconds to wait for a free connection before failing
+	 * @param idleTimeout milliseconds a connection above the minimum size may sit idle before it is closed
+	 * @param leakThreshold milliseconds a connection may be held before its stack is reported as a leak, 0 to not track leaks
+	 */
+	public ConnectionPool(String url, String username, String password, int minSize, int maxSize, long acquireTimeout, long idleTimeout, long leakThreshold) {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) throw new IllegalArgumentException("Invalid pool size " + minSize + "-" + maxSize);
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.acquireTimeout = acquireTimeout;
+		this.idleTimeout = idleTimeout;
+		this.leakThreshold = leakThreshold;
+		this.permits = new Semaphore(maxSize, true);
+
+		fill();
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "connection-pool-housekeeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD, HOUSEKEEPING_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Checks out a connection, waiting up to the acquisition timeout for one to become free
+	 * @return pooled connection (close it to return it to the pool)
+	 * @throws SQLException thrown if the pool is exhausted or a connection can not be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		if (closed) throw new SQLException("Connection pool is closed");
+
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+				timeouts.incrementAndGet();
+				throw new SQLException("Timed out after " + acquireTimeout + "ms waiting for a database connection (" + leased.size() + "/" + maxSize + " in use)");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+		waitNanos.addAndGet(System.nanoTime() - start);
+
+		try {
+			PooledConnection pooled = takeIdle();
+			if (pooled == null) pooled = open();
+			pooled.lease();
+			leased.add(pooled);
+			acquired.incrementAndGet();
+			return pooled.handle();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Not supported, the pool only holds connections for its configured user
+	 */
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Connection pool does not support per-call credentials");
+	}
+
+	/**
+	 * Gets a snapshot of pool usage
+	 * @return the pool statistics
+	 */
+	public PoolStats getStats() {
+		long count = acquired.get();
+		return new PoolStats(leased.size() + idle.size(), idle.size(), leased.size(), permits.getQueueLength(), minSize, maxSize,
+				count, created.get(), evicted.get(), timeouts.get(), leaks.get(), count == 0 ? 0 : waitNanos.get() / count / 1000);
+	}
+
+	/**
+	 * Gets hit and miss counts of the prepared statement caches of every pooled connection
+	 * @return the statement caches' statistics
+	 */
+	public CacheStats getStatementStats() {
+		long size = 0;
+		for (PooledConnection pooled : idle) size += pooled.statements.size();
+		for (PooledConnection pooled : leased) size += pooled.statements.size();
+		return new CacheStats("prepared statements", statementHits.get(), statementMisses.get(), size);
+	}
+
+	/**
+	 * Closes every idle connection and stops housekeeping. Leased connections are closed when they are returned.
+	 */
+	public void close() {
+		closed = true;
+		housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) discard(pooled);
+	}
+
+	public PrintWriter getLogWriter() {
+		return logWriter;
+	}
+
+	public void setLogWriter(PrintWriter out) {
+		this.logWriter = out;
+	}
+
+	public void setLoginTimeout(int seconds) {
+		DriverManager.setLoginTimeout(seconds);
+	}
+
+	public int getLoginTimeout() {
+		return DriverManager.getLoginTimeout();
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new SQLFeatureNotSupportedException();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Connection pool does not wrap " + iface.getName());
+	}
+
+	public boolean isWrapperFor(Class<?> iface) {
+		return iface.isInstance(this);
+	}
+
+	/**
+	 * Takes the most recently used idle connection, discarding it if it is no longer usable
+	 * @return an idle connection or null if none is available
+	 */
+	private PooledConnection takeIdle() {
+		PooledConnection pooled;
+		while ((pooled = idle.pollFirst()) != null) {
+			if (pooled.isUsable()) return pooled;
+			discard(pooled);
+		}
+		return null;
+	}
+
+	/**
+	 * Opens a new physical connection
+	 * @return the new pooled connection
+	 * @throws SQLException thrown if the database can not be reached
+	 */
+	private PooledConnection open() throws SQLException {
+		Connection physical = DriverManager.getConnection(url, username, password);
+		created.incrementAndGet();
+		return new PooledConnection(physical);
+	}
+
+	/**
+	 * Returns a connection to the pool once its handle is closed
+	 * @param pooled the connection being returned
+	 */
+	private void release(PooledConnection pooled) {
+		leased.remove(pooled);
+		try {
+			if (!closed && pooled.reset()) idle.offerFirst(pooled);
+			else discard(pooled);
+		} finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * Closes a physical connection that is leaving the pool
+	 * @param pooled the connection to close
+	 */
+	private void discard(PooledConnection pooled) {
+		evicted.incrementAndGet();
+		pooled.statements.close();
+		try {
+			pooled.physical.close();
+		} catch (SQLException e) {
+			System.out.println(e);
+		}
+	}
+
+	/**
+	 * Opens connections until the pool holds its minimum number
+	 */
+	private void fill() {
+		while (!closed && leased.size() + idle.size() < minSize) {
+			try {
+				idle.offerLast(open());
+			} catch (SQLException e) {
+				System.out.println(e);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Evicts expired idle connections, tops the pool back up to its minimum and reports leaked connections
+	 */
+	private void housekeep() {
+		long now = System.currentTimeMillis();
+
+		//Oldest idle connections sit at the tail of the deque
+		Iterator<PooledConnection> it = idle.descendingIterator();
+		while (it.hasNext() && leased.size() + idle.size() > minSize) {
+			PooledConnection pooled = it.next();
+			if (now - pooled.lastUsed > idleTimeout && idle.remove(pooled)) discard(pooled);
+		}
+		fill();
+
+		if (leakThreshold <= 0) return;
+		for (PooledConnection pooled : leased) {
+			Throwable lease = pooled.leaseTrace;
+			if (lease != null && !pooled.leakReported && now - pooled.leasedAt > leakThreshold) {
+				pooled.leakReported = true;
+				leaks.incrementAndGet();
+				System.out.println("Possible connection leak: connection held for " + (now - pooled.leasedAt) + "ms, acquired at");
+				lease.printStackTrace(System.out);
+			}
+		}
+	}
+
+	/**
+	 * Physical connection owned by the pool along with its lease bookkeeping
+	 */
+	private class PooledConnection {
+		private final Connection physical;
+		private final StatementCache statements;
+		private volatile long lastUsed;
+		private volatile long leasedAt;
+		private volatile Throwable leaseTrace;
+		private volatile boolean leakReported;
+
+		private PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.statements = new StatementCache(physical, STATEMENT_CACHE_SIZE, statementHits, statementMisses);
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		private void lease() {
+			leasedAt = System.currentTimeMillis();
+			if (leakThreshold > 0) leaseTrace = new Throwable("Connection acquired by " + Thread.currentThread().getName());	//Capturing the stack is only worth it when leaks are reported
+			leakReported = false;
+		}
+
+		/**
+		 * Creates a new handle for this lease, so a stale handle can not return the connection twice
+		 */
+		private Connection handle() {
+			return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(), new Class<?>[] {Connection.class}, new Handle(this));
+		}
+
+		/**
+		 * Checks an idle connection is still open, asking the server if it has been idle for a while
+		 */
+		private boolean isUsable() {
+			try {
+				if (physical.isClosed()) return false;
+				if (System.currentTimeMillis() - lastUsed < VALIDATION_IDLE_TIME) return true;
+				return physical.isValid(VALIDATION_TIMEOUT);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Rolls back any unfinished transaction so the next borrower starts clean
+		 * @return true if the connection can be reused
+		 */
+		private boolean reset() {
+			leaseTrace = null;
+			lastUsed = System.currentTimeMillis();
+			try {
+				if (physical.isClosed()) return false;
+				if (!physical.getAutoCommit()) {
+					physical.rollback();
+					physical.setAutoCommit(true);
+				}
+				return true;
+			} catch (SQLException e) {
+				System.out.println(e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Connection handle given to callers. Closing it returns the physical connection to the pool.
+	 */
+	private class Handle implements InvocationHandler {
+		private final PooledConnection pooled;
+		private boolean closed;
+
+		private Handle(PooledConnection pooled) {
+			this.pooled = pooled;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					release(pooled);
+				}
+				return null;
+			case "isClosed":
+				return closed || pooled.physical.isClosed();
+			case "prepareStatement":
+				if (closed) throw new SQLException("Connection has been returned to the pool");
+				if (args.length == 1) return pooled.statements.prepare((String) args[0], -1);
+				if (args.length == 2 && args[1] instanceof Integer) return pooled.statements.prepare((String) args[0], (Integer) args[1]);
+				break;
+			case "unwrap":
+			case "isWrapperFor":
+				break;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Pooled " + pooled.physical;
+			default:
+				if (closed) throw new SQLException("Connection has been returned to the pool");
+			}
+
+			try {
+				return method.invoke(pooled.physical, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports the roster of every troop to its own file. The troops are shared between several worker connections that all read
+ * from one snapshot exported by a coordinating transaction, so the dump is consistent across troops while being read in parallel.
+ *
+ * Usage: CouncilExport output-directory [csv|ndjson] [workers]
+ */
+public class CouncilExport {
+	private static final int DEFAULT_WORKERS = 4;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: CouncilExport output-directory [csv|ndjson] [workers]");
+			return;
+		}
+		File directory = new File(args[0]);
+		RosterImporter.Format format = args.length > 1 && args[1].equalsIgnoreCase("csv") ? RosterImporter.Format.CSV : RosterImporter.Format.NDJSON;
+		int workers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS;
+
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Can not create " + directory);
+		long start = System.currentTimeMillis();
+		long rows = export(directory, format, workers);
+		System.out.println("Exported " + rows + " scouts in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Exports every troop
+	 * @param directory directory troop files are written to
+	 * @param format format of the rosters
+	 * @param workers number of connections reading in parallel
+	 * @return number of scouts exported
+	 * @throws SQLException thrown if database error
+	 * @throws IOException thrown if a file can not be written
+	 * @throws InterruptedException thrown if interrupted while waiting for the workers
+	 */
+	public static long export(File directory, RosterImporter.Format format, int workers) throws SQLException, IOException, InterruptedException {
+		try (Connection coordinator = connect()) {
+			//The snapshot stays importable for as long as this transaction is open
+			String snapshot;
+			ConcurrentLinkedQueue<Integer> troops = new ConcurrentLinkedQueue<Integer>();
+			try (Statement statement = coordinator.createStatement()) {
+				try (ResultSet rs = statement.executeQuery("SELECT pg_export_snapshot()")) {
+					rs.next();
+					snapshot = rs.getString(1);
+				}
+				try (ResultSet rs = statement.executeQuery("SELECT id FROM " + DatabaseNames.TROOP_TABLE + " ORDER BY id")) {
+					while (rs.next()) troops.add(rs.getInt(1));
+				}
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(workers);
+			try {
+				List<Future<Long>> results = new ArrayList<Future<Long>>();
+				for (int i = 0; i < workers; i++) {
+					results.add(executor.submit(() -> exportTroops(snapshot, troops, directory, format)));
+				}
+
+				long rows = 0;
+				for (Future<Long> result : results) rows += result.get();
+				return rows;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+				coordinator.rollback();
+			}
+		}
+	}
+
+	/**
+	 * Worker loop: takes troops off the queue until it is empty, reading each from the shared snapshot
+	 */
+	private static long exportTroops(String snapshot, ConcurrentLinkedQueue<Integer> troops, File directory, RosterImporter.Format format) throws SQLException, IOException {
+		long rows = 0;
+		try (Connection conn = connect()) {
+			try (Statement statement = conn.createStatement()) {
+				statement.execute("SET TRANSACTION SNAPSHOT '" + snapshot + "'");
+			}
+
+			Integer troopID;
+			while ((troopID = troops.poll()) != null) {
+				File file = new File(directory, "troop-" + troopID + (format == RosterImporter.Format.CSV ? ".csv" : ".ndjson"));
+				try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+					rows += TroopExporter.export(conn, troopID, out, format);
+				}
+			}
+			conn.rollback();
+		}
+		return rows;
+	}
+
+	/**
+	 * Opens a connection in a repeatable read transaction, as snapshots can only be exported and imported at that level
+	 */
+	private static Connection connect() throws SQLException {
+		Connection conn = DriverManager.getConnection(ScoutTrackApi.DB_URL, ScoutTrackApi.DB_USERNAME, ScoutTrackApi.DB_PASSWORD);
+		conn.setAutoCommit(false);
+		conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+		conn.setReadOnly(true);
+		return conn;
+	}
+}
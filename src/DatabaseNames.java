@@ -8,5 +8,7 @@ public class DatabaseNames {
 	protected final static String MB_TABLE = "meritbadges";
 	protected final static String SCOUT_REQ_TABLE = "scouts_requirements";
 	protected final static String SCOUT_MB_TABLE = "scouts_meritbadges";
+	protected final static String REVOKED_TOKEN_TABLE = "revoked_tokens";
+	protected final static String REFRESH_SESSION_TABLE = "refresh_sessions";
 }
 
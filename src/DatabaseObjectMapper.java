@@ -1,9 +1,15 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.sql2o.Sql2oException;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 public abstract class DatabaseObjectMapper {
 	private String[] UNIVERSAL_FIELDS = {"name"};
 	
@@ -18,5 +24,45 @@ public abstract class DatabaseObjectMapper {
 		return true;
 	}	
 	
+	/**
+	 * Reads a string field while streaming a Json object, rejecting a value of the wrong type or longer than length
+	 * @param reader reader positioned at the field's value
+	 * @param field name of the field, used in the error
+	 * @param length maximum length of the value
+	 * @return the value
+	 * @throws IOException thrown if the Json can not be read
+	 * @throws InvalidJsonDataException thrown if the value is not a string or too long
+	 */
+	protected String nextString(JsonReader reader, String field, int length) throws IOException, InvalidJsonDataException {
+		JsonToken token = reader.peek();
+		if (token != JsonToken.STRING && token != JsonToken.NUMBER) throw new InvalidJsonDataException(field + " must be a string");
+		String value = reader.nextString();
+		if (!checkString(value, length)) throw new InvalidJsonDataException(field + " is longer than " + length + " characters");
+		return value;
+	}
+	
+	/**
+	 * Ends the Json object of a body, rejecting anything but whitespace after it
+	 * @param reader reader positioned at the end of the object
+	 * @throws IOException thrown if the Json can not be read
+	 * @throws InvalidJsonDataException thrown if content follows the object
+	 */
+	protected void endDocument(JsonReader reader) throws IOException, InvalidJsonDataException {
+		reader.endObject();
+		if (reader.peek() != JsonToken.END_DOCUMENT) throw new InvalidJsonDataException("Unexpected content after the Json object");
+	}
+	
+	/**
+	 * Checks every required field was read
+	 * @param required names of the required fields
+	 * @param seen names of the fields read
+	 * @throws InvalidJsonDataException thrown naming the first missing field
+	 */
+	protected void checkFields(Collection<String> required, Set<String> seen) throws InvalidJsonDataException {
+		for (String field : required) {
+			if (!seen.contains(field)) throw new InvalidJsonDataException("Missing " + field);
+		}
+	}
+	
 	public abstract void validate() throws Sql2oException, NoRecordFoundException, InvalidJsonDataException, NoJsonToParseException;
 }
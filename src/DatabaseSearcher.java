@@ -1,3 +1,5 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,6 +9,8 @@ import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
 public class DatabaseSearcher {
+	private static final int COPY_THRESHOLD = 200;	//Join records written with COPY instead of a batch of inserts
+	
 	private Sql2o sql2o;
 	
 	/**
@@ -27,7 +31,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is a database error
 	 */
 	public String queryString(String table, String column, int id) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT " + column + " FROM " + table + " WHERE id = :id";
+		String sql = SqlTemplates.selectById(table, column);
 		try (Connection conn = sql2o.open()) {
 			String response = conn.createQuery(sql).addParameter("id", id).executeAndFetchFirst(String.class);
 			if (response == null) throw new NoRecordFoundException();
@@ -47,17 +51,18 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException
 	 */
 	public List <String> queryStrings(String table, String column, List <Integer> ids) throws NoRecordFoundException {
-		//Prepare sql
-		String sql = "SELECT " + column + " FROM " + table + " WHERE id IN ";
-		sql = addCollection(sql, ids.size());
+		String sql = SqlTemplates.selectByIds(table, column);
+		try (Connection conn = sql2o.open()) {
+			Query q = conn.createQuery(sql);
+			q = addArrayParameter(conn, q, "ids", ids);
+			List <String> response = q.executeAndFetch(String.class);
 			
-		//Add parameters and execute
-		Query q = sql2o.open().createQuery(sql);
-		q = addParameters(q, ids);
-		List <String> response = q.executeAndFetch(String.class);
-		
-		if (response == null) throw new NoRecordFoundException();
-		return response;
+			if (response == null) throw new NoRecordFoundException();
+			return response;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	/**
@@ -71,19 +76,27 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException thrown if no matching records are found
 	 */
 	public List<String> fetchStringsWhere(String table, String checkColumn, String hasValue, String retrieveColumn) throws Sql2oException, NoRecordFoundException {
-		String sql = "SELECT " + retrieveColumn +" FROM " + table + " WHERE " + checkColumn + " = :value";
-		Connection conn = sql2o.open();
-		List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
-		if(response == null) throw new NoRecordFoundException();
-		return response;
+		String sql = SqlTemplates.selectWhere(table, checkColumn, retrieveColumn);
+		try (Connection conn = sql2o.open()) {
+			List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
+			if(response == null) throw new NoRecordFoundException();
+			return response;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	public List<String> fetchStringsWhere(String table, String checkColumn, int hasValue, String retrieveColumn) throws Sql2oException, NoRecordFoundException {
-		String sql = "SELECT " + retrieveColumn +" FROM " + table + " WHERE " + checkColumn + " = :value";
-		Connection conn = sql2o.open();
-		List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
-		if(response == null) throw new NoRecordFoundException();
-		return response;
+		String sql = SqlTemplates.selectWhere(table, checkColumn, retrieveColumn);
+		try (Connection conn = sql2o.open()) {
+			List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
+			if(response == null) throw new NoRecordFoundException();
+			return response;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	/**
@@ -97,27 +110,35 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException thrown if no matching records are found
 	 */
 	public List<Integer> fetchIntsWhere(String table, String checkColumn, String hasValue, String retrieveColumn) throws Sql2oException, NoRecordFoundException {
-		String sql = "SELECT " + retrieveColumn +" FROM " + table + " WHERE " + checkColumn + " = :value";
-		Connection conn = sql2o.open();
-		List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
-		
-		if(response == null) throw new NoRecordFoundException();
-		
-		List <Integer> ints = new ArrayList<Integer>();
-		for(String str : response) ints.add(Integer.parseInt(str));
-		return ints;
+		String sql = SqlTemplates.selectWhere(table, checkColumn, retrieveColumn);
+		try (Connection conn = sql2o.open()) {
+			List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
+			
+			if(response == null) throw new NoRecordFoundException();
+			
+			List <Integer> ints = new ArrayList<Integer>();
+			for(String str : response) ints.add(Integer.parseInt(str));
+			return ints;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	public List<Integer> fetchIntsWhere(String table, String checkColumn, int hasValue, String retrieveColumn) throws Sql2oException, NoRecordFoundException {
-		String sql = "SELECT " + retrieveColumn +" FROM " + table + " WHERE " + checkColumn + " = :value";
-		Connection conn = sql2o.open();
-		List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
-		
-		if(response == null) throw new NoRecordFoundException();
-		
-		List <Integer> ints = new ArrayList<Integer>();
-		for(String str : response) ints.add(Integer.parseInt(str));
-		return ints;
+		String sql = SqlTemplates.selectWhere(table, checkColumn, retrieveColumn);
+		try (Connection conn = sql2o.open()) {
+			List <String> response = conn.createQuery(sql).addParameter("value", hasValue).executeAndFetch(String.class);
+			
+			if(response == null) throw new NoRecordFoundException();
+			
+			List <Integer> ints = new ArrayList<Integer>();
+			for(String str : response) ints.add(Integer.parseInt(str));
+			return ints;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	/**
@@ -129,7 +150,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is a database error
 	 */
 	public void updateString(String table, String column, String value, int id) {
-		String sql = "UPDATE " + table + " SET " + column + " = :value WHERE  id = :id";
+		String sql = SqlTemplates.updateById(table, column);
 		try (Connection conn = sql2o.beginTransaction()) {
 			conn.createQuery(sql).addParameter("value", value).addParameter("id", id).executeUpdate();
 			conn.commit();
@@ -149,7 +170,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is a database error
 	 */
 	public int queryInt(String table, String column, int id) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT " + column + " FROM " + table + " WHERE id = :id";
+		String sql = SqlTemplates.selectById(table, column);
 		try (Connection conn = sql2o.open()) {
 			String response = conn.createQuery(sql).addParameter("id", id).executeAndFetchFirst(String.class);
 			if (response == null) throw new NoRecordFoundException();
@@ -170,7 +191,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is database error
 	 */
 	public void updateInt(String table, String column, int value, int id) {
-		String sql = "UPDATE " + table + " SET " + column + " = :value WHERE id = :id";
+		String sql = SqlTemplates.updateById(table, column);
 		try(Connection conn = sql2o.beginTransaction()) {
 			conn.createQuery(sql).addParameter("value", value).addParameter("id", id).executeUpdate();
 			conn.commit();
@@ -192,26 +213,55 @@ public class DatabaseSearcher {
 	 */
 	public void addJoinRecords(String table, String firstColumn, String secondColumn, int[] firstID, int[] secondID) throws Sql2oException, InvalidDatabaseOperation {
 		if (firstID.length != secondID.length) throw new InvalidDatabaseOperation("add join table records");
+		writeJoinRecords(table, firstColumn, secondColumn, 0, firstID, secondID);
+	}
+	
+	/**
+	 * Adds records to join table that all share the same first id
+	 * @param table the table to add the records to
+	 * @param firstColumn the name of the first column of the join table
+	 * @param secondColumn the name of the second column of the join table
+	 * @param firstID id inserted into the first column of every record
+	 * @param secondID array of ids to be inserted into the second column
+	 * @throws Sql2oException thrown if database error
+	 */
+	public void addJoinRecords(String table, String firstColumn, String secondColumn, int firstID, int[] secondID) throws Sql2oException {
+		writeJoinRecords(table, firstColumn, secondColumn, firstID, null, secondID);
+	}
+	
+	/**
+	 * Writes join records in one transaction, batching small sets and streaming large ones through a binary COPY
+	 * @param fixedFirstID first id used when firstIDs is null
+	 * @param firstIDs ids of the first column, or null
+	 */
+	private void writeJoinRecords(String table, String firstColumn, String secondColumn, int fixedFirstID, int[] firstIDs, int[] secondIDs) throws Sql2oException {
+		if (secondIDs.length == 0) return;
 		
-		//Construct query with fence post correction
-		String sql = "INSERT INTO " + table + " (" + firstColumn + ", " + secondColumn + ") VALUES ";
-		for(int i = 0; i < firstID.length - 1; i++) {
-			sql += "(:firstID" + i + ", :secondID" + i + "), ";
-		}
-		sql += "(:firstID" + (firstID.length - 1) + ", :secondID" + (secondID.length - 1) + ")";
-		
-		//make query
 		try (Connection conn = sql2o.beginTransaction()){
-			Query query = conn.createQuery(sql);
-			for(int i = 0; i < firstID.length; i++){
-				query.addParameter("firstID" + i, firstID[i]).addParameter("secondID" + i, secondID[i]);
+			if (secondIDs.length < COPY_THRESHOLD) {
+				Query query = conn.createQuery(SqlTemplates.insertPair(table, firstColumn, secondColumn));
+				for(int i = 0; i < secondIDs.length; i++) {
+					query.addParameter("firstID", firstIDs == null ? fixedFirstID : firstIDs[i]).addParameter("secondID", secondIDs[i]).addToBatch();
+				}
+				query.executeBatch();
+			}
+			else {
+				try (BinaryCopyWriter copy = new BinaryCopyWriter(conn.getJdbcConnection(), table, firstColumn, secondColumn)) {
+					for(int i = 0; i < secondIDs.length; i++) {
+						copy.startRow(2);
+						copy.writeInt(firstIDs == null ? fixedFirstID : firstIDs[i]);
+						copy.writeInt(secondIDs[i]);
+					}
+					copy.finish();
+				} catch (SQLException e) {
+					throw new Sql2oException("Error copying records into " + table, e);
+				}
 			}
-			query.executeUpdate();
 			conn.commit();
 		} catch (Sql2oException e) {
 			System.out.println(e);
 			throw e;
-		}			
+		}
 	}
 	
 	/**
@@ -224,10 +274,34 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if database error occurs
 	 */
 	public void addJoinRecord(String table, String firstColumn, String secondColumn, int firstID, int secondID) throws Sql2oException {
-		String sql = "INSERT INTO " + table + " (" + firstColumn + ", " + secondColumn + ") VALUES (:firstID, :secondID)";
-		Connection conn = sql2o.beginTransaction();
-		conn.createQuery(sql).addParameter("firstID", firstID).addParameter("secondID", secondID).executeUpdate();
-		conn.commit();
+		String sql = SqlTemplates.insertPair(table, firstColumn, secondColumn);
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("firstID", firstID).addParameter("secondID", secondID).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Removes record from join table
+	 * @param table database table's name
+	 * @param firstColumn first column's name
+	 * @param secondColumn second column's name
+	 * @param firstID id in first column
+	 * @param secondID id in second column
+	 * @throws Sql2oException thrown if database error occurs
+	 */
+	public void deleteJoinRecord(String table, String firstColumn, String secondColumn, int firstID, int secondID) throws Sql2oException {
+		String sql = SqlTemplates.deletePair(table, firstColumn, secondColumn);
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("firstID", firstID).addParameter("secondID", secondID).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
 	}
 	
 	/**
@@ -240,7 +314,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is a database error
 	 */
 	public int searchId(String table, String column, String value) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT id FROM " + table + " WHERE " + column + " = :value";
+		String sql = SqlTemplates.selectWhere(table, column, "id");
 		try(Connection conn = sql2o.open()) {
 			String response = conn.createQuery(sql).addParameter("value", value).executeAndFetchFirst(String.class);
 			if (response == null) throw new NoRecordFoundException();
@@ -261,7 +335,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown by database error
 	 */
 	public List<Integer> searchIds(String table, String column, int value) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT id FROM " + table + " WHERE " + column + " = :value";
+		String sql = SqlTemplates.selectWhere(table, column, "id");
 		try(Connection conn = sql2o.open()) {
 			List <String> response = conn.createQuery(sql).addParameter("value", value).executeAndFetch(String.class);
 			if(response == null) throw new NoRecordFoundException();
@@ -284,7 +358,7 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown by database error
 	 */
 	public List<String> searchIds(String table, String column, String value) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT id FROM " + table + " WHERE " + column + " = :value";
+		String sql = SqlTemplates.selectWhere(table, column, "id");
 		try(Connection conn = sql2o.open()) {
 			List <String> response = conn.createQuery(sql).addParameter("value", value).executeAndFetch(String.class);
 			if(response == null) throw new NoRecordFoundException();
@@ -302,9 +376,9 @@ public class DatabaseSearcher {
 	 * @throws Sql2oException thrown if there is a database error
 	 */
 	public void deleteFrom(String table, int id) {
-		String sql = "DELETE FROM " + table + " WHERE id = :id";
+		String sql = SqlTemplates.deleteWhere(table, "id");
 		try (Connection conn = sql2o.beginTransaction()) {
-			conn.createQuery(sql).addParameter("id", id).executeUpdate();
+			conn.createQuery(sql).addParameter("value", id).executeUpdate();
 			conn.commit();
 		} catch(Sql2oException e) {
 			System.out.println(e);
@@ -319,7 +393,7 @@ public class DatabaseSearcher {
 	 * @param value value of the column where the records should be deleted
 	 */
 	public void deleteWhere(String table, String column, int value) {
-		String sql = "DELETE FROM " + table + " WHERE " + column + " = :value";
+		String sql = SqlTemplates.deleteWhere(table, column);
 		try (Connection conn = sql2o.beginTransaction()) {
 			conn.createQuery(sql).addParameter("value", value).executeUpdate();
 			conn.commit();
@@ -337,9 +411,24 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException thrown if no record has rankName
 	 */
 	public int idOfRank(String rankName) throws Sql2oException, NoRecordFoundException {
+		Catalog catalog = Catalog.current();
+		if (catalog != null) return catalog.idOfRank(rankName);
 		return searchId(DatabaseNames.RANK_TABLE, "name", rankName);
 	}
 	
+	/**
+	 * Retrieves name of rank with passed id
+	 * @param rankID id of the rank
+	 * @return name of the rank
+	 * @throws Sql2oException thrown if there is a database error
+	 * @throws NoRecordFoundException thrown if no rank has rankID
+	 */
+	public String nameOfRank(int rankID) throws Sql2oException, NoRecordFoundException {
+		Catalog catalog = Catalog.current();
+		if (catalog != null) return catalog.nameOfRank(rankID);
+		return queryString(DatabaseNames.RANK_TABLE, "name", rankID);
+	}
+	
 	/**
 	 * Retrieves id of record with troop name
 	 * @param troopName the name of the troop
@@ -359,6 +448,9 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException thrown if no record is found
 	 */
 	public int idOfRequirement(String reqName, int rankid) throws Sql2oException, NoRecordFoundException {
+		Catalog catalog = Catalog.current();
+		if (catalog != null) return catalog.idOfRequirement(reqName, rankid);
+		
 		String sql = "SELECT id FROM " + DatabaseNames.REQ_TABLE + " WHERE name = :name AND rankid = :rankid";
 		try (Connection conn = sql2o.open()) {
 			String response = conn.createQuery(sql).addParameter("name", reqName).addParameter("rankid", rankid).executeAndFetchFirst(String.class);
@@ -378,9 +470,118 @@ public class DatabaseSearcher {
 	 * @throws NoRecordFoundException thrown if no record is found
 	 */
 	public int idOfMeritbadge(String mbName) throws Sql2oException, NoRecordFoundException {
+		Catalog catalog = Catalog.current();
+		if (catalog != null) return catalog.idOfMeritbadge(mbName);
 		return searchId(DatabaseNames.MB_TABLE, "name", mbName);
 	}
+	
+	/**
+	 * Retrieves names of merit badges with passed ids
+	 * @param mbIDs ids of the merit badges
+	 * @return names of the merit badges
+	 * @throws Sql2oException thrown by database error
+	 * @throws NoRecordFoundException thrown if a merit badge is not found
+	 */
+	public List<String> namesOfMeritbadges(List<Integer> mbIDs) throws Sql2oException, NoRecordFoundException {
+		Catalog catalog = Catalog.current();
+		if (catalog == null) return queryStrings(DatabaseNames.MB_TABLE, "name", mbIDs);
+		
+		List<String> names = new ArrayList<String>(mbIDs.size());
+		for (int mbID : mbIDs) names.add(catalog.nameOfMeritbadge(mbID));
+		return names;
+	}
 		
+	/**
+	 * Resolves a batch of requirements in memory or with a single query
+	 * @param reqNames names of the requirements
+	 * @param rankNames names of the rank each requirement is in
+	 * @param reqIDs array filled with the id of each requirement
+	 * @param rankIDs array filled with the id of each requirement's rank
+	 * @throws Sql2oException thrown by database error
+	 * @throws NoRecordsFoundException thrown listing every requirement that was not found
+	 */
+	public void resolveRequirements(String[] reqNames, String[] rankNames, int[] reqIDs, int[] rankIDs) throws Sql2oException, NoRecordsFoundException {
+		List<String> missing = new ArrayList<String>();
+		Catalog catalog = Catalog.current();
+		
+		if (catalog != null) {
+			for (int i = 0; i < reqNames.length; i++) {
+				try {
+					rankIDs[i] = catalog.idOfRank(rankNames[i]);
+					reqIDs[i] = catalog.idOfRequirement(reqNames[i], rankIDs[i]);
+				} catch (NoRecordFoundException e) {
+					missing.add(describeRequirement(reqNames[i], rankNames[i]));
+				}
+			}
+		}
+		else if (reqNames.length > 0) {
+			String sql = "SELECT v.ord, rk.id AS rankid, rq.id AS reqid"
+					+ " FROM unnest(:names, :ranks) WITH ORDINALITY AS v(name, rank, ord)"
+					+ " LEFT JOIN " + DatabaseNames.RANK_TABLE + " rk ON rk.name = v.rank"
+					+ " LEFT JOIN " + DatabaseNames.REQ_TABLE + " rq ON rq.name = v.name AND rq.rankid = rk.id";
+			try (Connection conn = sql2o.open()) {
+				Query q = conn.createQuery(sql);
+				q = addArrayParameter(conn, q, "names", "text", reqNames);
+				q = addArrayParameter(conn, q, "ranks", "text", rankNames);
+				q.executeAndFetch((ResultSet rs) -> {
+					int i = rs.getInt("ord") - 1;
+					rankIDs[i] = rs.getInt("rankid");
+					reqIDs[i] = rs.getInt("reqid");
+					if (rs.wasNull()) missing.add(describeRequirement(reqNames[i], rankNames[i]));
+					return null;
+				});
+			} catch (Sql2oException e) {
+				System.out.println(e);
+				throw e;
+			}
+		}
+		
+		if (!missing.isEmpty()) throw new NoRecordsFoundException(missing);
+	}
+	
+	/**
+	 * Resolves a batch of merit badges in memory or with a single query
+	 * @param mbNames names of the merit badges
+	 * @return ids of the merit badges in the same order
+	 * @throws Sql2oException thrown by database error
+	 * @throws NoRecordsFoundException thrown listing every merit badge that was not found
+	 */
+	public int[] resolveMeritbadges(String[] mbNames) throws Sql2oException, NoRecordsFoundException {
+		int[] mbIDs = new int[mbNames.length];
+		List<String> missing = new ArrayList<String>();
+		Catalog catalog = Catalog.current();
+		
+		if (catalog != null) {
+			for (int i = 0; i < mbNames.length; i++) {
+				try {
+					mbIDs[i] = catalog.idOfMeritbadge(mbNames[i]);
+				} catch (NoRecordFoundException e) {
+					missing.add(describeMeritbadge(mbNames[i]));
+				}
+			}
+		}
+		else if (mbNames.length > 0) {
+			String sql = "SELECT v.ord, mb.id FROM unnest(:names) WITH ORDINALITY AS v(name, ord)"
+					+ " LEFT JOIN " + DatabaseNames.MB_TABLE + " mb ON mb.name = v.name";
+			try (Connection conn = sql2o.open()) {
+				Query q = conn.createQuery(sql);
+				q = addArrayParameter(conn, q, "names", "text", mbNames);
+				q.executeAndFetch((ResultSet rs) -> {
+					int i = rs.getInt("ord") - 1;
+					mbIDs[i] = rs.getInt("id");
+					if (rs.wasNull()) missing.add(describeMeritbadge(mbNames[i]));
+					return null;
+				});
+			} catch (Sql2oException e) {
+				System.out.println(e);
+				throw e;
+			}
+		}
+		
+		if (!missing.isEmpty()) throw new NoRecordsFoundException(missing);
+		return mbIDs;
+	}
+	
 	/**
 	 * Adds a collection to an sql statement (Meant to be used with addParameters method)
 	 * @param sql sql statement
@@ -406,4 +607,49 @@ public class DatabaseSearcher {
 		for(int i = 0; i < param.size(); i++) q.addParameter("value" + i, param.get(i));
 		return q;
 	}
+	
+	/**
+	 * Binds a list of integers to a query as a single array parameter (for use with = ANY(:name))
+	 * @param conn connection the query was created on
+	 * @param q query to add the parameter to
+	 * @param name name of the parameter
+	 * @param values integers to bind
+	 * @return query with the array parameter
+	 * @throws Sql2oException thrown if the array can not be created
+	 */
+	public Query addArrayParameter(Connection conn, Query q, String name, List<Integer> values) throws Sql2oException {
+		return addArrayParameter(conn, q, name, "int4", values.toArray());
+	}
+	
+	/**
+	 * Binds values to a query as a single array parameter
+	 * @param conn connection the query was created on
+	 * @param q query to add the parameter to
+	 * @param name name of the parameter
+	 * @param type PostgreSQL type of the array's elements
+	 * @param values values to bind
+	 * @return query with the array parameter
+	 * @throws Sql2oException thrown if the array can not be created
+	 */
+	public Query addArrayParameter(Connection conn, Query q, String name, String type, Object[] values) throws Sql2oException {
+		try {
+			return q.addParameter(name, conn.getJdbcConnection().createArrayOf(type, values));
+		} catch (SQLException e) {
+			throw new Sql2oException("Could not create array parameter " + name, e);
+		}
+	}
+	
+	/**
+	 * Describes a requirement for validation errors
+	 */
+	private String describeRequirement(String reqName, String rankName) {
+		return "requirement " + reqName + " (" + rankName + ")";
+	}
+	
+	/**
+	 * Describes a merit badge for validation errors
+	 */
+	private String describeMeritbadge(String mbName) {
+		return "merit badge " + mbName;
+	}
 }
\ No newline at end of file
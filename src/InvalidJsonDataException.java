@@ -1,7 +1,27 @@
 
 @SuppressWarnings("serial")
 public class InvalidJsonDataException extends Exception{
+	private final String detail;
+	
 	public InvalidJsonDataException() {
 		super("Json Data Invalid");
+		this.detail = null;
+	}
+	
+	/**
+	 * Constructs exception explaining what part of the data is invalid
+	 * @param detail description of the invalid data, safe to return to the client
+	 */
+	public InvalidJsonDataException(String detail) {
+		super("Json Data Invalid: " + detail);
+		this.detail = detail;
+	}
+	
+	/**
+	 * Gets description of the invalid data
+	 * @return the description, or null if none was given
+	 */
+	public String getDetail() {
+		return detail;
 	}
 }
@@ -0,0 +1,270 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.crypto.MACVerifier;
+
+/**
+ * Token signing keys kept in a JCEKS keystore file that every node of a deployment shares. Each key is stored under an alias
+ * "k" followed by the time (in milliseconds since the epoch) it starts signing tokens, and that alias is the kid written in
+ * the header of the tokens it signs. New keys are added ahead of their activation so every node has loaded them before any
+ * token signed with them arrives; older keys keep verifying tokens until every token they could have signed has expired.
+ */
+public class KeyRing {
+	private static final long ROTATION_PERIOD = Long.getLong("scouttrack.keys.rotationPeriod", 2592000000L);		//In milliseconds, 30 days
+	private static final long ACTIVATION_DELAY = Long.getLong("scouttrack.keys.activationDelay", 3600000L);		//In milliseconds
+	private static final long RETENTION = Long.getLong("scouttrack.keys.retention", 5270400000L);				//In milliseconds, 61 days (longest token lifespan plus a day)
+	private static final String KEY_ALGORITHM = "HmacSHA256";
+	private static final String KEYSTORE_TYPE = "JCEKS";
+
+	private final File file;
+	private final char[] password;
+	private volatile Keys keys;
+	private long loadedModified;
+
+	/**
+	 * Opens the key ring stored in a keystore file, creating the file with one key if it does not exist
+	 * @param file the keystore file
+	 * @param password password of the keystore and its keys
+	 * @throws IOException thrown if the file can not be read or written
+	 * @throws GeneralSecurityException thrown if the keystore can not be loaded
+	 */
+	public KeyRing(File file, char[] password) throws IOException, GeneralSecurityException {
+		this.file = file;
+		this.password = password;
+		maintain();
+	}
+
+	/**
+	 * Gets the key new tokens are signed with
+	 * @return kid of the key
+	 */
+	public String signingKeyID() {
+		return keys.signingKeyID;
+	}
+
+	/**
+	 * Gets the signer of the key new tokens are signed with
+	 * @return the signer
+	 */
+	public JWSSigner signer() {
+		return keys.signer;
+	}
+
+	/**
+	 * Gets the number of the key new tokens are signed with, the kid without its "k" prefix. Compact tokens carry this number.
+	 * @return the key's activation time in milliseconds since the epoch
+	 */
+	public long signingKeyNumber() {
+		return keys.signingNumber;
+	}
+
+	/**
+	 * Gets the secret of the key new tokens are signed with
+	 * @return the HMAC key
+	 */
+	public SecretKey signingKey() {
+		return keys.signingKey;
+	}
+
+	/**
+	 * Gets the secret of a key by its number, without allocating
+	 * @param keyNumber the number of the key
+	 * @return the HMAC key, or null if the key is unknown or retired
+	 */
+	public SecretKey secretKey(long keyNumber) {
+		Keys current = keys;
+		int index = Arrays.binarySearch(current.numbers, keyNumber);
+		return index < 0 ? null : current.numbered[index];
+	}
+
+	/**
+	 * Gets the verifier of a key
+	 * @param keyID kid from a token header
+	 * @return the verifier, or null if the key is unknown or retired
+	 */
+	public JWSVerifier verifier(String keyID) {
+		if (keyID == null) return null;
+		return keys.verifiers.get(keyID);
+	}
+
+	/**
+	 * Reloads the keystore if another node changed it, adds a key when the signing key is due for rotation and drops keys
+	 * no unexpired token can be signed with. The file is locked while it is read and written.
+	 * @throws IOException thrown if the file can not be read or written
+	 * @throws GeneralSecurityException thrown if the keystore can not be loaded
+	 */
+	@SuppressWarnings("try")	//The file lock is held by the try block, not referenced in it
+	public synchronized void maintain() throws IOException, GeneralSecurityException {
+		long now = System.currentTimeMillis();
+		File lockFile = new File(file.getPath() + ".lock");
+		try (RandomAccessFile lockAccess = new RandomAccessFile(lockFile, "rw"); FileLock lock = lockAccess.getChannel().lock()) {
+			if (keys != null && file.lastModified() == loadedModified && !rotationDue(keys.activations, now) && !pruneDue(keys.activations, now)) {
+				keys = select(keys.activations, keys.secrets, now);	//Nothing changed on disk, but a pending key may have activated
+				return;
+			}
+
+			KeyStore store = KeyStore.getInstance(KEYSTORE_TYPE);
+			if (file.exists()) {
+				try (InputStream in = new FileInputStream(file)) {
+					store.load(in, password);
+				}
+			}
+			else store.load(null, password);
+
+			TreeMap<Long, String> activations = new TreeMap<Long, String>();
+			Map<String, SecretKey> secrets = new HashMap<String, SecretKey>();
+			Enumeration<String> aliases = store.aliases();
+			while (aliases.hasMoreElements()) {
+				String alias = aliases.nextElement();
+				if (!alias.startsWith("k") || !store.isKeyEntry(alias)) continue;
+				activations.put(Long.parseLong(alias.substring(1)), alias);
+				secrets.put(alias, (SecretKey) store.getKey(alias, password));
+			}
+
+			boolean changed = false;
+			if (activations.isEmpty() || rotationDue(activations, now)) {
+				long activation = activations.isEmpty() ? now : Math.max(now + ACTIVATION_DELAY, activations.lastKey() + 1);	//The first key signs at once
+				String alias = "k" + activation;
+				SecretKey secret = new SecretKeySpec(KeyFunctions.generateSHA256(), KEY_ALGORITHM);
+				store.setEntry(alias, new KeyStore.SecretKeyEntry(secret), new KeyStore.PasswordProtection(password));
+				activations.put(activation, alias);
+				secrets.put(alias, secret);
+				changed = true;
+			}
+			while (pruneDue(activations, now)) {
+				String alias = activations.remove(activations.firstKey());
+				store.deleteEntry(alias);
+				secrets.remove(alias);
+				changed = true;
+			}
+
+			if (changed) save(store);
+			loadedModified = file.lastModified();
+			keys = select(activations, secrets, now);
+		}
+	}
+
+	/**
+	 * Runs maintenance periodically on a background thread. A failed run keeps the current keys.
+	 * @param period time between runs in milliseconds
+	 */
+	public void scheduleMaintenance(long period) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "key-ring");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				maintain();
+			} catch (IOException | GeneralSecurityException e) {
+				e.printStackTrace();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Checks if the newest key is old enough that its successor must be added now to activate on time
+	 */
+	private static boolean rotationDue(TreeMap<Long, String> activations, long now) {
+		return activations.lastKey() + ROTATION_PERIOD - ACTIVATION_DELAY <= now;
+	}
+
+	/**
+	 * Checks if the oldest key was replaced long enough ago that every token it signed has expired
+	 */
+	private static boolean pruneDue(TreeMap<Long, String> activations, long now) {
+		if (activations.size() < 2) return false;
+		Long successor = activations.higherKey(activations.firstKey());
+		return successor + RETENTION <= now;
+	}
+
+	/**
+	 * Builds the signer of the newest active key and verifiers of every key
+	 */
+	private static Keys select(TreeMap<Long, String> activations, Map<String, SecretKey> secrets, long now) throws GeneralSecurityException {
+		Map.Entry<Long, String> signing = activations.floorEntry(now);
+		if (signing == null) signing = activations.firstEntry();
+		long[] numbers = new long[activations.size()];
+		SecretKey[] numbered = new SecretKey[activations.size()];
+		int i = 0;
+		for (Map.Entry<Long, String> activation : activations.entrySet()) {		//Ascending, ready for binary search
+			numbers[i] = activation.getKey();
+			numbered[i++] = secrets.get(activation.getValue());
+		}
+		try {
+			Map<String, JWSVerifier> verifiers = new HashMap<String, JWSVerifier>();
+			for (Map.Entry<String, SecretKey> secret : secrets.entrySet()) verifiers.put(secret.getKey(), new MACVerifier(secret.getValue()));
+			return new Keys(activations, secrets, signing.getKey(), signing.getValue(), new MACSigner(secrets.get(signing.getValue())),
+					Collections.unmodifiableMap(verifiers), numbers, numbered);
+		} catch (JOSEException e) {
+			throw new GeneralSecurityException("Key can not be used to sign tokens", e);
+		}
+	}
+
+	/**
+	 * Writes the keystore to a temporary file and moves it over the keystore, so nodes never read a partial file
+	 */
+	private void save(KeyStore store) throws IOException, GeneralSecurityException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try (OutputStream out = new FileOutputStream(temp)) {
+			store.store(out, password);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Immutable snapshot of the loaded keys
+	 */
+	private static class Keys {
+		private final TreeMap<Long, String> activations;
+		private final Map<String, SecretKey> secrets;
+		private final long signingNumber;
+		private final String signingKeyID;
+		private final SecretKey signingKey;
+		private final JWSSigner signer;
+		private final Map<String, JWSVerifier> verifiers;
+		private final long[] numbers;
+		private final SecretKey[] numbered;
+
+		private Keys(TreeMap<Long, String> activations, Map<String, SecretKey> secrets, long signingNumber, String signingKeyID, JWSSigner signer,
+				Map<String, JWSVerifier> verifiers, long[] numbers, SecretKey[] numbered) {
+			this.activations = activations;
+			this.secrets = secrets;
+			this.signingNumber = signingNumber;
+			this.signingKeyID = signingKeyID;
+			this.signingKey = secrets.get(signingKeyID);
+			this.signer = signer;
+			this.verifiers = verifiers;
+			this.numbers = numbers;
+			this.numbered = numbered;
+		}
+	}
+}
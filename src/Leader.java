@@ -3,11 +3,13 @@ import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
 import java.security.SecureRandom;
+import java.sql.ResultSet;
 
 public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	
 	private final Sql2o sql2o;
 	private final int id;
+	private Row row;		//Loaded on first use
 	
 	/**
 	 * Constructs new leader but does not store any information in the database
@@ -40,6 +42,7 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void destroy() throws Sql2oException {
 		super.deleteFrom(DatabaseNames.LEADER_TABLE, id);
+		LeaderTroopCache.invalidate(id);
 	}
 	
 	/**
@@ -57,7 +60,7 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryName() throws Sql2oException, NoRecordFoundException {
-		return super.queryString(DatabaseNames.LEADER_TABLE, "name", id);
+		return row().name;
 	}
 	
 	/**
@@ -67,6 +70,7 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateName(String name) throws Sql2oException {
 		super.updateString(DatabaseNames.LEADER_TABLE, "name", name, id);
+		if (row != null) row.name = name;
 	}
 	
 	/**
@@ -76,7 +80,7 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryEmail() throws Sql2oException, NoRecordFoundException {
-		return super.queryString(DatabaseNames.LEADER_TABLE, "email", id);
+		return row().email;
 	}
 	
 	/**
@@ -86,6 +90,7 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateEmail(String email) throws Sql2oException {
 		super.updateString(DatabaseNames.LEADER_TABLE, "email", email, id);
+		if (row != null) row.email = email;
 	}
 	
 	/**
@@ -95,8 +100,9 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryTroop() throws Sql2oException, NoRecordFoundException {
-		int troopID = super.queryInt(DatabaseNames.LEADER_TABLE, "troopid", id);
-		return super.queryString(DatabaseNames.TROOP_TABLE, "name", troopID);
+		String troop = row().troop;
+		if (troop == null) throw new NoRecordFoundException();
+		return troop;
 	}
 
 	/**
@@ -109,6 +115,8 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	public void updateTroop(String troop) throws Sql2oException, NoRecordFoundException {
 		int troopID = super.searchId(DatabaseNames.TROOP_TABLE, "name", troop);
 		super.updateInt(DatabaseNames.LEADER_TABLE, "troopid", troopID, id);
+		if (row != null) row.troop = troop;
+		LeaderTroopCache.invalidate(id);
 	}	
 	
 	/**
@@ -122,25 +130,55 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 	}
 	
 	/**
-	 * Updates leader's password hash in the database
-	 * @param pwd the leader's password hash (not plaintext)
-	 * @return true if successful, else false
+	 * Updates leader's password in the database, hashed with a new salt
+	 * @param pwd the leader's password as sent by the client
+	 * @throws Sql2oException thrown on database error
+	 * @throws ServerBusyException thrown if too many passwords are being hashed
+	 */
+	public void updatePwd(String pwd) throws Sql2oException, ServerBusyException {
+		byte[] salt = getSalt();
+		String sql = "UPDATE " + DatabaseNames.LEADER_TABLE + " SET pwd=:pwd, salt=:salt WHERE id=:id";
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("pwd", PasswordHasher.hash(pwd, salt)).addParameter("salt", salt).addParameter("id", id).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Gets the leader's row, reading it with the troop's name on first use. Updates made through this object keep it current.
+	 * @return the leader's row
+	 * @throws NoRecordFoundException thrown if the leader is not found
+	 * @throws Sql2oException thrown by database error
 	 */
-	public void updatePwd(String pwd) throws Sql2oException {
-		super.updateString(DatabaseNames.LEADER_TABLE, "pwd", pwd, id);
+	private Row row() throws NoRecordFoundException, Sql2oException {
+		if (row != null) return row;
+		String sql = "SELECT l.name, l.email, t.name AS troop FROM " + DatabaseNames.LEADER_TABLE + " l"
+				+ " LEFT JOIN " + DatabaseNames.TROOP_TABLE + " t ON t.id = l.troopid WHERE l.id = :id";
+		try (Connection conn = sql2o.open()) {
+			row = conn.createQuery(sql).addParameter("id", id)
+					.executeAndFetchFirst((ResultSet rs) -> new Row(rs.getString("name"), rs.getString("email"), rs.getString("troop")));
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		if (row == null) throw new NoRecordFoundException();
+		return row;
 	}
 	
 	/**
 	 * Adds Leader to database
 	 * @param name the leader's name
 	 * @param email the leader's email
-	 * @param pwd the leader's password hash (not plaintext)
+	 * @param pwd the leader's password as sent by the client, hashed with the leader's salt before it is stored
 	 * @param troopID the leader's troop's primary key
 	 * @return
 	 */
 	private int addLeader(String name, String email, String pwd, int troopID) {
 		byte[] salt = getSalt();
-		return storeLeader(name, email, pwd, salt, troopID);
+		return storeLeader(name, email, PasswordHasher.hash(pwd, salt), salt, troopID);
 	}
 	
 	/**
@@ -175,4 +213,19 @@ public class Leader extends DatabaseSearcher implements DatabaseObject, User{
 			throw e;
 		}
 	}
+	
+	/**
+	 * Memoized fields of the leader's row
+	 */
+	private static class Row {
+		private String name;
+		private String email;
+		private String troop;
+		
+		private Row(String name, String email, String troop) {
+			this.name = name;
+			this.email = email;
+			this.troop = troop;
+		}
+	}
 }
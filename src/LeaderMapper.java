@@ -1,16 +1,19 @@
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 public class LeaderMapper extends UserMapper {
 	private final List <String> FIELDS;// = {"name", "email", "pwd", "troop"};
 	private final String[] LEADER_FIELDS = {};
 	
-	private final JsonObject json;
+	private final JsonReader reader;
 	private final Sql2o sql2o;
 	
 	private boolean validated;
@@ -18,15 +21,16 @@ public class LeaderMapper extends UserMapper {
 	private String name;
 	private String email;
 	private String pwd;
+	private String troop;
 	private int troopID;
 
 	/**
-	 * Constructs LeaderMapper which can validate and map Json data to Leader objects
-	 * @param json
+	 * Constructs LeaderMapper which validates a Json object while reading it
+	 * @param reader reader positioned at the Json object
 	 * @param sql2o
 	 */
-	public LeaderMapper (JsonObject json, Sql2o sql2o) {
-		this.json = json;
+	public LeaderMapper (JsonReader reader, Sql2o sql2o) {
+		this.reader = reader;
 		this.sql2o = sql2o;
 		this.validated = false;
 
@@ -34,7 +38,7 @@ public class LeaderMapper extends UserMapper {
 	}
 	
 	public LeaderMapper (Sql2o sql2o) {
-		this.json = null;
+		this.reader = null;
 		this.sql2o = sql2o;
 		this.validated = false;
 		
@@ -49,29 +53,42 @@ public class LeaderMapper extends UserMapper {
 	 * @throws NoJsonToParseException 
 	 */
 	public void validate() throws Sql2oException, NoRecordFoundException, InvalidJsonDataException, NoJsonToParseException {
-		if(json == null) throw new NoJsonToParseException();
+		if(reader == null) throw new NoJsonToParseException();
 		
-		DatabaseSearcher lookup = new DatabaseSearcher(sql2o);
-		
-		//Check that json has all the necessary fields
-		for (String field : FIELDS) {
-			if (!json.has(field)) {
-				throw new InvalidJsonDataException();
+		//Check types and lengths of the fields as they are read, then that json had all the necessary fields
+		Set<String> seen = new HashSet<String>();
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				switch (field) {
+				case "name":
+					this.name = validateName(nextString(reader, field, NAME_LENGTH));
+					break;
+				case "email":
+					this.email = validateEmail(nextString(reader, field, EMAIL_LENGTH));
+					break;
+				case "pwd":
+					this.pwd = validatePwd(nextString(reader, field, PWD_LENGTH));
+					break;
+				case "troop":
+					this.troop = nextString(reader, field, TroopMapper.TROOP_NAME_LENGTH);
+					break;
+				default:
+					reader.skipValue();
+					continue;
+				}
+				seen.add(field);
 			}
+			endDocument(reader);
+		} catch (IOException | IllegalStateException e) {
+			throw new InvalidJsonDataException();		//Malformed Json or a value of the wrong type
 		}
-				
-		//Check that Strings are not null and less than the max size
-		this.name = json.get("name").getAsString();
-		validateName(name);
-		
-		this.email = json.get("email").getAsString();
-		validateEmail(email);
-		
-		this.pwd = json.get("pwd").getAsString();
-		validatePwd(pwd);
+		checkFields(FIELDS, seen);
 		
 		//Check that troop is in the database
-		this.troopID = lookup.idOfTroop(json.get("troop").getAsString());
+		DatabaseSearcher lookup = new DatabaseSearcher(sql2o);
+		this.troopID = lookup.idOfTroop(troop);
 		if (troopID < 0) throw new InvalidJsonDataException();
 		
 		this.validated = true;
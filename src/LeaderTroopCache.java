@@ -0,0 +1,87 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sql2o.Sql2oException;
+
+/**
+ * Troop each leader belongs to, consulted by every troop route to authorize the leader. Entries are dropped when a leader
+ * changes troop or is removed, and expire after a short time as a safety net for changes made outside this process.
+ */
+public class LeaderTroopCache {
+	private static final long TTL = Long.getLong("scouttrack.leaderTroopCache.ttl", 60000);	//In milliseconds
+	private static final int CAPACITY = Integer.getInteger("scouttrack.leaderTroopCache.size", 10000);
+
+	private static final ConcurrentHashMap<Integer, Entry> CACHE = new ConcurrentHashMap<Integer, Entry>();
+	private static final AtomicLong generation = new AtomicLong();	//Incremented by every invalidation
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Gets id of a leader's troop
+	 * @param lookup DatabaseSearcher used on a cache miss
+	 * @param leaderID id of the leader
+	 * @return id of the leader's troop
+	 * @throws NoRecordFoundException thrown if the leader does not exist
+	 * @throws Sql2oException thrown if database error
+	 */
+	public static int troopOf(DatabaseSearcher lookup, int leaderID) throws NoRecordFoundException, Sql2oException {
+		Entry entry = CACHE.get(leaderID);
+		if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+			hits.incrementAndGet();
+			return entry.troopID;
+		}
+		misses.incrementAndGet();
+
+		long seen = generation.get();
+		int troopID = lookup.queryInt(DatabaseNames.LEADER_TABLE, "troopid", leaderID);
+		if (generation.get() == seen) {		//Don't cache a troop read while the leader was changing
+			if (CACHE.size() >= CAPACITY) purge();
+			CACHE.put(leaderID, new Entry(troopID, System.currentTimeMillis() + TTL));
+		}
+		return troopID;
+	}
+
+	/**
+	 * Drops a leader's troop, now and again when the current request's transaction ends
+	 * @param leaderID id of the leader
+	 */
+	public static void invalidate(int leaderID) {
+		remove(leaderID);
+		RequestScope scope = RequestScope.current();
+		if (scope != null) scope.onEnd(() -> remove(leaderID));
+	}
+
+	/**
+	 * Gets hit and miss counts of the cache
+	 * @return the cache's statistics
+	 */
+	public static CacheStats getStats() {
+		return new CacheStats("leader troops", hits.get(), misses.get(), CACHE.size());
+	}
+
+	private static void remove(int leaderID) {
+		generation.incrementAndGet();
+		CACHE.remove(leaderID);
+	}
+
+	/**
+	 * Drops expired entries, or every entry if none had expired
+	 */
+	private static void purge() {
+		long now = System.currentTimeMillis();
+		if (!CACHE.values().removeIf(entry -> entry.expiresAt <= now)) CACHE.clear();
+	}
+
+	/**
+	 * Cached troop of one leader
+	 */
+	private static class Entry {
+		private final int troopID;
+		private final long expiresAt;
+
+		private Entry(int troopID, long expiresAt) {
+			this.troopID = troopID;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
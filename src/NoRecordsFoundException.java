@@ -0,0 +1,22 @@
+import java.util.List;
+
+@SuppressWarnings("serial")
+public class NoRecordsFoundException extends NoRecordFoundException {
+	private final List<String> missing;
+	
+	/**
+	 * Constructs exception listing every record a batch lookup could not find
+	 * @param missing descriptions of the records that were not found
+	 */
+	public NoRecordsFoundException(List<String> missing) {
+		this.missing = missing;
+	}
+	
+	/**
+	 * Gets the records that were not found
+	 * @return descriptions of the missing records
+	 */
+	public List<String> getMissing() {
+		return missing;
+	}
+}
@@ -0,0 +1,72 @@
+
+public class PasswordHashStats {
+	private int iterations;
+	private int threads;
+	private int queueLimit;
+	private int inFlight;
+	private int importsInFlight;
+	private long hashes;
+	private long rejected;
+	private long averageMicros;
+	private long maxMicros;
+
+	/**
+	 * Constructs snapshot of password hashing
+	 * @param iterations PBKDF2 iterations of new hashes
+	 * @param threads threads hashing passwords
+	 * @param queueLimit hashes allowed to wait for a thread
+	 * @param inFlight hashes running or waiting
+	 * @param importsInFlight hashes of bulk imports running or waiting
+	 * @param hashes total hashes computed
+	 * @param rejected total hashes rejected because the pool was full
+	 * @param averageMicros average time to compute one hash
+	 * @param maxMicros longest time to compute one hash
+	 */
+	public PasswordHashStats(int iterations, int threads, int queueLimit, int inFlight, int importsInFlight, long hashes, long rejected, long averageMicros, long maxMicros) {
+		this.iterations = iterations;
+		this.threads = threads;
+		this.queueLimit = queueLimit;
+		this.inFlight = inFlight;
+		this.importsInFlight = importsInFlight;
+		this.hashes = hashes;
+		this.rejected = rejected;
+		this.averageMicros = averageMicros;
+		this.maxMicros = maxMicros;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getQueueLimit() {
+		return queueLimit;
+	}
+
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	public int getImportsInFlight() {
+		return importsInFlight;
+	}
+
+	public long getHashes() {
+		return hashes;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getAverageMicros() {
+		return averageMicros;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+}
@@ -0,0 +1,186 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Server side password hashing with PBKDF2 and the user's stored salt. Hashing is deliberately slow, so it runs on its own
+ * small pool instead of the request threads: a burst of logins then queues here while every other route keeps its threads.
+ * The pool admits a bounded number of hashes (running plus queued); a login arriving when it is full is rejected at once
+ * with ServerBusyException rather than waiting behind the burst. Bulk imports wait for permits of their own, fewer than the
+ * pool has threads, so an import neither takes a login's admission nor every thread.
+ *
+ * Hashes are stored as "pbkdf2-sha256$iterations$base64(hash)", so the cost can be raised without invalidating existing
+ * passwords. Rows still holding the client supplied hash from before server side hashing are compared directly and
+ * rehashed on the next successful login.
+ */
+public class PasswordHasher {
+	private static final int ITERATIONS = Integer.getInteger("scouttrack.password.iterations", 100000);
+	private static final int THREADS = Integer.getInteger("scouttrack.password.threads", Runtime.getRuntime().availableProcessors());
+	private static final int QUEUE_LIMIT = Integer.getInteger("scouttrack.password.queue", 64);	//Hashes waiting for a thread
+	private static final int IMPORT_PERMITS = Integer.getInteger("scouttrack.password.importPermits", Math.max(1, THREADS / 2));	//Import hashes running or waiting
+	private static final int HASH_BITS = 256;
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final String PREFIX = "pbkdf2-sha256$";
+
+	private static final ExecutorService POOL = Executors.newFixedThreadPool(THREADS, r -> {
+		Thread thread = new Thread(r, "password-hasher");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final Semaphore admitted = new Semaphore(THREADS + QUEUE_LIMIT);
+	private static final Semaphore importing = new Semaphore(IMPORT_PERMITS);
+	private static final byte[] ABSENT_SALT = new byte[User.SALT_LENGTH];
+	private static final AtomicLong hashes = new AtomicLong();
+	private static final AtomicLong rejected = new AtomicLong();
+	private static final AtomicLong totalNanos = new AtomicLong();
+	private static final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Hashes a password for storage
+	 * @param pwd the password
+	 * @param salt the user's salt
+	 * @return the encoded hash
+	 * @throws ServerBusyException thrown if too many hashes are already waiting
+	 */
+	public static String hash(String pwd, byte[] salt) throws ServerBusyException {
+		if (!admitted.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new ServerBusyException();
+		}
+		return await(POOL.submit(() -> encode(pwd, salt, ITERATIONS, admitted)));
+	}
+
+	/**
+	 * Hashes many passwords for storage, waiting for one of the import permits instead of being rejected. Used by bulk
+	 * imports, which may take longer during a login burst but never fail because of it.
+	 * @param pwds the passwords
+	 * @param salts the users' salts, in the same order
+	 * @return the encoded hashes, in the same order
+	 * @throws ServerBusyException thrown if interrupted while waiting
+	 */
+	public static String[] hashAll(String[] pwds, byte[][] salts) throws ServerBusyException {
+		List<Future<String>> pending = new ArrayList<Future<String>>(pwds.length);
+		for (int i = 0; i < pwds.length; i++) {
+			String pwd = pwds[i];
+			byte[] salt = salts[i];
+			try {
+				importing.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ServerBusyException();
+			}
+			pending.add(POOL.submit(() -> encode(pwd, salt, ITERATIONS, importing)));
+		}
+		String[] hashed = new String[pwds.length];
+		for (int i = 0; i < hashed.length; i++) hashed[i] = await(pending.get(i));
+		return hashed;
+	}
+
+	/**
+	 * Checks a password against a stored hash
+	 * @param pwd the password to check
+	 * @param salt the user's salt
+	 * @param stored the stored hash
+	 * @return true if the password matches
+	 * @throws ServerBusyException thrown if too many hashes are already waiting
+	 */
+	public static boolean verify(String pwd, byte[] salt, String stored) throws ServerBusyException {
+		if (stored == null) return false;
+		if (!stored.startsWith(PREFIX)) return constantTimeEquals(pwd, stored);		//Not yet hashed on the server
+		int separator = stored.indexOf('$', PREFIX.length());
+		if (separator < 0) return false;
+		int iterations;
+		try {
+			iterations = Integer.parseInt(stored.substring(PREFIX.length(), separator));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		if (!admitted.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new ServerBusyException();
+		}
+		return constantTimeEquals(await(POOL.submit(() -> encode(pwd, salt, iterations, admitted))), stored);
+	}
+
+	/**
+	 * Takes as long as verifying a password, for a login whose user does not exist, so the time of the reply does not tell
+	 * which emails have an account
+	 * @param pwd the password that was presented
+	 * @throws ServerBusyException thrown if too many hashes are already waiting
+	 */
+	public static void verifyAbsent(String pwd) throws ServerBusyException {
+		if (!admitted.tryAcquire()) {
+			rejected.incrementAndGet();
+			throw new ServerBusyException();
+		}
+		await(POOL.submit(() -> encode(pwd, ABSENT_SALT, ITERATIONS, admitted)));
+	}
+
+	/**
+	 * Checks if a stored hash should be replaced, because it predates server side hashing or used a different cost
+	 * @param stored the stored hash
+	 * @return true if the password should be hashed again on the next successful login
+	 */
+	public static boolean needsRehash(String stored) {
+		return !stored.startsWith(PREFIX + ITERATIONS + "$");
+	}
+
+	/**
+	 * Gets counts and latency of hashes
+	 * @return the hasher's statistics
+	 */
+	public static PasswordHashStats getStats() {
+		long count = hashes.get();
+		return new PasswordHashStats(ITERATIONS, THREADS, QUEUE_LIMIT, THREADS + QUEUE_LIMIT - admitted.availablePermits(),
+				IMPORT_PERMITS - importing.availablePermits(), count, rejected.get(), count == 0 ? 0 : totalNanos.get() / count / 1000, maxNanos.get() / 1000);
+	}
+
+	/**
+	 * Waits for a hash
+	 */
+	private static String await(Future<String> hashed) throws ServerBusyException {
+		try {
+			return hashed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerBusyException();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Password can not be hashed", e.getCause());
+		}
+	}
+
+	/**
+	 * Runs PBKDF2 on a pool thread, records its latency and releases the permit the hash was admitted with
+	 */
+	private static String encode(String pwd, byte[] salt, int iterations, Semaphore permits) throws GeneralSecurityException {
+		long start = System.nanoTime();
+		try {
+			PBEKeySpec spec = new PBEKeySpec(pwd.toCharArray(), salt, iterations, HASH_BITS);
+			byte[] hash = SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+			spec.clearPassword();
+			return PREFIX + iterations + "$" + Base64.getEncoder().encodeToString(hash);
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			hashes.incrementAndGet();
+			totalNanos.addAndGet(elapsed);
+			maxNanos.accumulateAndGet(elapsed, Math::max);
+			permits.release();
+		}
+	}
+
+	private static boolean constantTimeEquals(String a, String b) {
+		return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+	}
+}
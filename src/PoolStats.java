@@ -0,0 +1,93 @@
+
+public class PoolStats {
+	private int total;
+	private int idle;
+	private int leased;
+	private int waiting;
+	private int minSize;
+	private int maxSize;
+	private long acquired;
+	private long created;
+	private long evicted;
+	private long timeouts;
+	private long leaks;
+	private long averageWaitMicros;
+
+	/**
+	 * Constructs snapshot of connection pool usage
+	 * @param total open physical connections
+	 * @param idle connections waiting in the pool
+	 * @param leased connections currently checked out
+	 * @param waiting threads waiting for a connection
+	 * @param minSize configured minimum pool size
+	 * @param maxSize configured maximum pool size
+	 * @param acquired total checkouts
+	 * @param created total physical connections opened
+	 * @param evicted total physical connections closed
+	 * @param timeouts total checkouts that timed out
+	 * @param leaks total connections reported as leaked
+	 * @param averageWaitMicros average time spent waiting for a connection
+	 */
+	public PoolStats(int total, int idle, int leased, int waiting, int minSize, int maxSize, long acquired, long created, long evicted, long timeouts, long leaks, long averageWaitMicros) {
+		this.total = total;
+		this.idle = idle;
+		this.leased = leased;
+		this.waiting = waiting;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.acquired = acquired;
+		this.created = created;
+		this.evicted = evicted;
+		this.timeouts = timeouts;
+		this.leaks = leaks;
+		this.averageWaitMicros = averageWaitMicros;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public int getIdle() {
+		return idle;
+	}
+
+	public int getLeased() {
+		return leased;
+	}
+
+	public int getWaiting() {
+		return waiting;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getAcquired() {
+		return acquired;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public long getEvicted() {
+		return evicted;
+	}
+
+	public long getTimeouts() {
+		return timeouts;
+	}
+
+	public long getLeaks() {
+		return leaks;
+	}
+
+	public long getAverageWaitMicros() {
+		return averageWaitMicros;
+	}
+}
@@ -0,0 +1,171 @@
+import java.security.SecureRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+/**
+ * Refresh token families, one row per login. Every refresh token of a login carries the login's session id and a generation
+ * in its jti (the session in the high 48 bits, the generation in the low 16). Renewing a refresh token advances its session's
+ * generation in place, so only the newest refresh token of a session is accepted and renewals add no rows. Ending a session
+ * rejects all of its refresh tokens at once.
+ *
+ * Generations wrap after 65536 renewals, long after a refresh token of the same generation has expired.
+ */
+public class RefreshSessionStore {
+	private static final int GENERATION_BITS = 16;
+	private static final int GENERATION_MASK = (1 << GENERATION_BITS) - 1;
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Sql2o sql2o;
+
+	/**
+	 * Constructs RefreshSessionStore, creating its table if needed
+	 * @param sql2o the Sql2o database object
+	 * @throws Sql2oException thrown if database error
+	 */
+	public RefreshSessionStore(Sql2o sql2o) throws Sql2oException {
+		this.sql2o = sql2o;
+		String sql = "CREATE TABLE IF NOT EXISTS " + DatabaseNames.REFRESH_SESSION_TABLE
+				+ " (sid bigint PRIMARY KEY, generation int NOT NULL, expires_at bigint NOT NULL)";
+		try (Connection conn = sql2o.open()) {
+			conn.createQuery(sql).executeUpdate();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Picks an id for a new session
+	 * @return a random 48 bit session id
+	 */
+	public static long newSession() {
+		return RANDOM.nextLong() >>> GENERATION_BITS;
+	}
+
+	/**
+	 * Builds the jti of a refresh token
+	 * @param session id of the token's session
+	 * @param generation generation of the token
+	 * @return the jti
+	 */
+	public static long jti(long session, int generation) {
+		return session << GENERATION_BITS | (generation & GENERATION_MASK);
+	}
+
+	/**
+	 * Gets the session of a refresh token
+	 * @param jti the refresh token's jti
+	 * @return id of the session
+	 */
+	public static long session(long jti) {
+		return jti >>> GENERATION_BITS;
+	}
+
+	/**
+	 * Gets the generation of a refresh token
+	 * @param jti the refresh token's jti
+	 * @return the generation
+	 */
+	public static int generation(long jti) {
+		return (int) (jti & GENERATION_MASK);
+	}
+
+	/**
+	 * Starts a session at generation 0
+	 * @param session id of the session (see newSession)
+	 * @param expiresAt time the session's first refresh token expires in milliseconds since the epoch
+	 * @return true if the session was started, false if the id is already taken
+	 * @throws Sql2oException thrown if database error
+	 */
+	public boolean open(long session, long expiresAt) throws Sql2oException {
+		String sql = "INSERT INTO " + DatabaseNames.REFRESH_SESSION_TABLE + " (sid, generation, expires_at) VALUES (:sid, 0, :expires)"
+				+ " ON CONFLICT DO NOTHING";
+		try (Connection conn = sql2o.beginTransaction()) {
+			int inserted = conn.createQuery(sql).addParameter("sid", session).addParameter("expires", expiresAt).executeUpdate().getResult();
+			conn.commit();
+			return inserted > 0;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Moves a session to its next generation, if the presented generation is still the current one. A renewal racing this
+	 * one waits for its row lock and then finds the generation already advanced.
+	 * @param session id of the session
+	 * @param generation generation of the refresh token being renewed
+	 * @param expiresAt time the next refresh token expires in milliseconds since the epoch
+	 * @return true if the session was advanced, false if the token was already renewed or the session ended
+	 * @throws Sql2oException thrown if database error
+	 */
+	public boolean advance(long session, int generation, long expiresAt) throws Sql2oException {
+		String sql = "UPDATE " + DatabaseNames.REFRESH_SESSION_TABLE + " SET generation = :next, expires_at = :expires"
+				+ " WHERE sid = :sid AND generation = :generation AND expires_at > :now";
+		try (Connection conn = sql2o.beginTransaction()) {
+			int updated = conn.createQuery(sql).addParameter("next", (generation + 1) & GENERATION_MASK).addParameter("expires", expiresAt)
+					.addParameter("sid", session).addParameter("generation", generation).addParameter("now", System.currentTimeMillis())
+					.executeUpdate().getResult();
+			conn.commit();
+			return updated > 0;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Ends a session, so none of its refresh tokens can be renewed
+	 * @param session id of the session
+	 * @throws Sql2oException thrown if database error
+	 */
+	public void close(long session) throws Sql2oException {
+		String sql = "DELETE FROM " + DatabaseNames.REFRESH_SESSION_TABLE + " WHERE sid = :sid";
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("sid", session).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Deletes sessions whose last refresh token has expired
+	 * @throws Sql2oException thrown if database error
+	 */
+	public void purge() throws Sql2oException {
+		String sql = "DELETE FROM " + DatabaseNames.REFRESH_SESSION_TABLE + " WHERE expires_at <= :now";
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("now", System.currentTimeMillis()).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Purges expired sessions periodically on a background thread
+	 * @param period time between purges in milliseconds
+	 */
+	public void schedulePurge(long period) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "refresh-session-purge");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				purge();
+			} catch (Sql2oException e) {
+				//Already logged, purged on the next run
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,121 @@
+import org.sql2o.Sql2o;
+
+import spark.Request;
+
+/**
+ * The authenticated caller of one request, resolved once by the authentication filter and attached to the request. Handlers
+ * read it instead of verifying the token again, and the user or troop object it hands out is built once per request and
+ * shares the request's database scope.
+ */
+public class RequestContext {
+	private static final String ATTRIBUTE = "scouttrack.context";
+	private static final int NO_TROOP = -1;
+
+	private final TokenPrincipal principal;
+	private final int troopID;
+	private final Sql2o sql2o;
+	private final RequestScope scope;
+	private Scout scout;
+	private Leader leader;
+	private Troop troop;
+
+	/**
+	 * Constructs RequestContext for a user
+	 * @param principal the user the request's token was issued to
+	 * @param sql2o the Sql2o database object
+	 */
+	public RequestContext(TokenPrincipal principal, Sql2o sql2o) {
+		this(principal, NO_TROOP, sql2o);
+	}
+
+	/**
+	 * Constructs RequestContext for a leader acting on their troop
+	 * @param principal the leader the request's token was issued to
+	 * @param troopID id of the troop the leader was verified to lead
+	 * @param sql2o the Sql2o database object
+	 */
+	public RequestContext(TokenPrincipal principal, int troopID, Sql2o sql2o) {
+		this.principal = principal;
+		this.troopID = troopID;
+		this.sql2o = sql2o;
+		this.scope = RequestScope.current();
+	}
+
+	/**
+	 * Attaches the context to a request
+	 * @param request the request
+	 */
+	public void attach(Request request) {
+		request.attribute(ATTRIBUTE, this);
+	}
+
+	/**
+	 * Gets the context attached to a request
+	 * @param request the request
+	 * @return the context
+	 * @throws AuthenticationException thrown if no filter authenticated the request
+	 */
+	public static RequestContext of(Request request) throws AuthenticationException {
+		RequestContext context = request.attribute(ATTRIBUTE);
+		if (context == null) throw new AuthenticationException();
+		return context;
+	}
+
+	/**
+	 * Gets the user the request's token was issued to
+	 * @return the principal
+	 */
+	public TokenPrincipal getPrincipal() {
+		return principal;
+	}
+
+	/**
+	 * Gets the request's database scope
+	 * @return the scope, or null if the request has none
+	 */
+	public RequestScope getScope() {
+		return scope;
+	}
+
+	/**
+	 * Gets the troop the leader was verified to lead
+	 * @return id of the troop
+	 * @throws AuthenticationException thrown if the request was not authorized for a troop
+	 */
+	public int getTroopID() throws AuthenticationException {
+		if (troopID == NO_TROOP) throw new AuthenticationException();
+		return troopID;
+	}
+
+	/**
+	 * Gets the calling scout
+	 * @return the scout, built on first use
+	 * @throws AuthenticationException thrown if the caller is not a scout
+	 */
+	public Scout scout() throws AuthenticationException {
+		if (principal.getType() != ScoutTrackToken.SCOUT_TYPE) throw new AuthenticationException();
+		if (scout == null) scout = new Scout(principal.getId(), sql2o);
+		return scout;
+	}
+
+	/**
+	 * Gets the calling leader
+	 * @return the leader, built on first use
+	 * @throws AuthenticationException thrown if the caller is not a leader
+	 */
+	public Leader leader() throws AuthenticationException {
+		if (principal.getType() != ScoutTrackToken.LEADER_TYPE) throw new AuthenticationException();
+		if (leader == null) leader = new Leader(principal.getId(), sql2o);
+		return leader;
+	}
+
+	/**
+	 * Gets the troop the leader was verified to lead
+	 * @return the troop, built on first use
+	 * @throws AuthenticationException thrown if the request was not authorized for a troop
+	 */
+	public Troop troop() throws AuthenticationException {
+		if (troop == null) troop = new Troop(getTroopID(), sql2o);
+		return troop;
+	}
+}
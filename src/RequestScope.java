@@ -0,0 +1,222 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Unit of work bound to the thread handling an http request. Every connection opened through a ScopedDataSource
+ * while the scope is active is a lease on one shared pooled connection, and every transaction begun during the
+ * request joins one database transaction that is committed or rolled back when the scope ends.
+ */
+public class RequestScope {
+	private static final ThreadLocal<RequestScope> CURRENT = new ThreadLocal<RequestScope>();
+
+	private final DataSource pool;
+	private Connection connection;
+	private boolean transactional;
+	private boolean rollbackOnly;
+	private List<Runnable> endTasks;
+
+	private RequestScope(DataSource pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Starts a scope on the current thread. A scope left behind by a request that failed before it could end is rolled back.
+	 * @param pool data source the scope's connection is checked out from
+	 * @return the new scope
+	 */
+	public static RequestScope begin(DataSource pool) {
+		if (CURRENT.get() != null) end(false);
+		RequestScope scope = new RequestScope(pool);
+		CURRENT.set(scope);
+		return scope;
+	}
+
+	/**
+	 * Gets the scope active on the current thread
+	 * @return the scope, or null if the thread is not handling a request
+	 */
+	public static RequestScope current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Ends the current thread's scope, committing its transaction if the request succeeded and returning its connection to the pool
+	 * @param success true if the request's work should be committed
+	 * @return true if the work was committed (or there was nothing to commit), false if it was rolled back or the commit failed
+	 */
+	public static boolean end(boolean success) {
+		RequestScope scope = CURRENT.get();
+		CURRENT.remove();
+		if (scope == null) return true;
+		boolean committed = scope.finish(success);
+		if (scope.endTasks != null) {
+			for (Runnable task : scope.endTasks) task.run();
+		}
+		return committed;
+	}
+
+	/**
+	 * Checks if this scope was opened over the passed data source
+	 * @param pool the data source
+	 * @return true if connections from pool should be shared through this scope
+	 */
+	public boolean isScopeOf(DataSource pool) {
+		return this.pool == pool;
+	}
+
+	/**
+	 * Leases the scope's connection, checking it out of the pool on first use
+	 * @return connection handle whose close, commit and rollback are deferred to the end of the scope
+	 * @throws SQLException thrown if no connection can be checked out
+	 */
+	public Connection lease() throws SQLException {
+		if (connection == null) connection = pool.getConnection();
+		return (Connection) Proxy.newProxyInstance(RequestScope.class.getClassLoader(), new Class<?>[] {Connection.class}, new Lease());
+	}
+
+	/**
+	 * Runs a task once the scope's transaction has been committed or rolled back, e.g. to drop cached data the request changed
+	 * @param task the task
+	 */
+	public void onEnd(Runnable task) {
+		if (endTasks == null) endTasks = new ArrayList<Runnable>();
+		endTasks.add(task);
+	}
+	
+	/**
+	 * Runs part of the request's work so that its failure undoes only that part. The work runs after a savepoint in the
+	 * scope's transaction and is rolled back to it if it throws, leaving earlier and later work to be committed.
+	 * @param work the work
+	 * @throws Exception thrown by the work, after it was rolled back
+	 */
+	public void isolate(Work work) throws Exception {
+		if (connection == null) connection = pool.getConnection();
+		joinTransaction();
+		boolean wasRollbackOnly = rollbackOnly;
+		Savepoint savepoint = connection.setSavepoint();
+		try {
+			work.run();
+		} catch (Exception e) {
+			connection.rollback(savepoint);
+			rollbackOnly = wasRollbackOnly;		//sql2o asks for a rollback of the whole transaction when a statement fails
+			throw e;
+		}
+		connection.releaseSavepoint(savepoint);
+	}
+	
+	/**
+	 * Marks the scope's transaction so it is rolled back instead of committed
+	 */
+	public void setRollbackOnly() {
+		rollbackOnly = true;
+	}
+
+	/**
+	 * Joins the scope's transaction, starting it if this is the first write of the request
+	 * @return true if the transaction was started by this call
+	 * @throws SQLException thrown if the transaction can not be started
+	 */
+	private boolean joinTransaction() throws SQLException {
+		if (transactional) return false;
+		connection.setAutoCommit(false);
+		transactional = true;
+		return true;
+	}
+
+	/**
+	 * Finishes the transaction and returns the connection to the pool
+	 */
+	private boolean finish(boolean success) {
+		if (connection == null) return true;
+		boolean committed = false;
+		try {
+			if (transactional) {
+				if (success && !rollbackOnly) {
+					connection.commit();
+					committed = true;
+				}
+				else connection.rollback();
+			}
+			else committed = true;
+		} catch (SQLException e) {
+			System.out.println(e);
+		} finally {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				System.out.println(e);
+			}
+			connection = null;
+		}
+		return committed;
+	}
+
+	/**
+	 * Part of a request's work run by isolate
+	 */
+	public interface Work {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Handle on the scope's connection given to one sql2o Connection
+	 */
+	private class Lease implements InvocationHandler {
+		private boolean closed;
+		private boolean autoCommit = true;
+		private boolean startedTransaction;
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				closed = true;
+				return null;
+			case "isClosed":
+				return closed;
+			case "getAutoCommit":
+				return autoCommit;
+			case "setAutoCommit":
+				autoCommit = (Boolean) args[0];
+				if (!autoCommit) startedTransaction = joinTransaction();
+				return null;
+			case "setTransactionIsolation":
+				if (!startedTransaction) return null;	//Isolation can only change before the scope's transaction runs anything
+				break;
+			case "commit":
+				return null;	//Committed when the scope ends
+			case "rollback":
+				if (args == null) {
+					setRollbackOnly();
+					return null;
+				}
+				break;
+			case "unwrap":
+			case "isWrapperFor":
+				break;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Request scoped " + connection;
+			default:
+				if (closed) throw new SQLException("Connection lease is closed");
+			}
+
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
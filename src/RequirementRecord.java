@@ -1,13 +0,0 @@
-
-public class RequirementRecord {
-	private String name;
-	private int rankid;
-	
-	public int getRankID() {
-		return rankid;
-	}
-	
-	public String getName() {
-		return name;
-	}
-}
@@ -0,0 +1,221 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rendered bodies of read routes, kept as identity and gzip encoded bytes and keyed by route, entity (a scout or troop) and
+ * the entity's version. Every write to a scout or troop bumps its version, now and again when the request's transaction
+ * ends, so this process never serves a body after a write it made. Bodies carry strong ETags hashed from their bytes: a
+ * request whose If-None-Match names the cached body's ETag is answered 304 without reading the database.
+ *
+ * Versions live in this process only. With several nodes behind one address, a write on one node does not bump the others,
+ * so each cached body also expires after scouttrack.responseCache.ttl milliseconds: another node serves a stale body for at
+ * most that long after a write. ETags depend only on the body, so every node agrees on them and a 304 never confirms a body
+ * the node would not send.
+ */
+public class ResponseCache {
+	private static final int CAPACITY = Integer.getInteger("scouttrack.responseCache.size", 10000);
+	private static final int MIN_GZIP_LENGTH = Integer.getInteger("scouttrack.responseCache.minGzipLength", 256);	//In bytes, smaller bodies are only sent as is
+	private static final long TTL = Long.getLong("scouttrack.responseCache.ttl", 30000);	//In milliseconds, bounds staleness across nodes
+	private static final int ETAG_BYTES = 16;
+
+	private static final ConcurrentHashMap<String, AtomicLong> VERSIONS = new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentHashMap<String, Body> CACHE = new ConcurrentHashMap<String, Body>();
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Names a scout as a versioned entity
+	 * @param scoutID id of the scout
+	 * @return the entity
+	 */
+	public static String scout(int scoutID) {
+		return "scout/" + scoutID;
+	}
+
+	/**
+	 * Names a troop as a versioned entity
+	 * @param troopID id of the troop
+	 * @return the entity
+	 */
+	public static String troop(int troopID) {
+		return "troop/" + troopID;
+	}
+
+	/**
+	 * Gets the current version of an entity
+	 * @param entity the entity (see scout and troop)
+	 * @return the version
+	 */
+	public static long version(String entity) {
+		AtomicLong version = VERSIONS.get(entity);
+		return version == null ? 0 : version.get();
+	}
+
+	/**
+	 * Bumps the version of an entity, now and again when the current request's transaction ends
+	 * @param entity the entity (see scout and troop)
+	 */
+	public static void bump(String entity) {
+		increment(entity);
+		RequestScope scope = RequestScope.current();
+		if (scope != null) scope.onEnd(() -> increment(entity));
+	}
+
+	/**
+	 * Bumps the versions of many entities, now and again when the current request's transaction ends
+	 * @param entities the entities (see scout and troop)
+	 */
+	public static void bumpAll(List<String> entities) {
+		if (entities.isEmpty()) return;
+		for (String entity : entities) increment(entity);
+		RequestScope scope = RequestScope.current();
+		if (scope != null) scope.onEnd(() -> {
+			for (String entity : entities) increment(entity);
+		});
+	}
+
+	/**
+	 * Gets a cached body
+	 * @param route name of the route
+	 * @param entity the entity the body is about
+	 * @param version the entity's current version
+	 * @return the body, or null if it is not cached at this version or has expired
+	 */
+	public static Body get(String route, String entity, long version) {
+		Body body = CACHE.get(route + " " + entity);
+		if (body != null && body.version == version && !body.isExpired(System.currentTimeMillis())) {
+			hits.incrementAndGet();
+			return body;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Compresses and caches a rendered body
+	 * @param route name of the route
+	 * @param entity the entity the body is about
+	 * @param version version of the entity read before the body was rendered
+	 * @param identity the rendered body
+	 * @return the cached body
+	 * @throws IOException thrown if the body can not be compressed
+	 */
+	public static Body put(String route, String entity, long version, byte[] identity) throws IOException {
+		long now = System.currentTimeMillis();
+		Body body = new Body(version, identity, identity.length < MIN_GZIP_LENGTH ? null : gzip(identity), etag(identity), now + TTL);
+		if (CACHE.size() >= CAPACITY) {
+			CACHE.clear();
+			VERSIONS.clear();	//A body rendered at a dropped version is at worst served until it expires
+		}
+		CACHE.merge(route + " " + entity, body, (cached, rendered) ->
+				cached.version > rendered.version && !cached.isExpired(now) ? cached : rendered);	//A slow render never replaces a newer one
+		return body;
+	}
+
+	/**
+	 * Gets hit and miss counts of the cache
+	 * @return the cache's statistics
+	 */
+	public static CacheStats getStats() {
+		return new CacheStats("responses", hits.get(), misses.get(), CACHE.size());
+	}
+
+	private static void increment(String entity) {
+		VERSIONS.computeIfAbsent(entity, key -> new AtomicLong()).incrementAndGet();
+	}
+
+	/**
+	 * Hashes a body into the quoted ETag of its identity encoding
+	 */
+	private static String etag(byte[] identity) {
+		try {
+			byte[] digest = Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(identity), ETAG_BYTES);
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);		//Every JVM provides it
+		}
+	}
+
+	/**
+	 * Compresses a body, or returns null if compression does not make it smaller
+	 */
+	private static byte[] gzip(byte[] identity) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(identity.length / 2);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(identity);
+		}
+		return bytes.size() < identity.length ? bytes.toByteArray() : null;
+	}
+
+	/**
+	 * One rendered body, the version of the entity it was rendered at and the time it expires
+	 */
+	public static class Body {
+		private final long version;
+		private final byte[] identity;
+		private final byte[] gzip;
+		private final String etag;
+		private final long expiresAt;
+
+		private Body(long version, byte[] identity, byte[] gzip, String etag, long expiresAt) {
+			this.version = version;
+			this.identity = identity;
+			this.gzip = gzip;
+			this.etag = etag;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+
+		/**
+		 * Gets the strong ETag of one encoding of the body
+		 * @param gzip true for the gzip encoded body
+		 * @return the quoted ETag
+		 */
+		public String getEtag(boolean gzip) {
+			return "\"" + etag + (gzip ? "-gzip\"" : "\"");
+		}
+
+		/**
+		 * Checks an If-None-Match header against the body's ETags
+		 * @param ifNoneMatch the header, may be null
+		 * @return the ETag that matched, or null if none did
+		 */
+		public String match(String ifNoneMatch) {
+			if (ifNoneMatch == null) return null;
+			String identity = getEtag(false);
+			String gzip = getEtag(true);
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.equals(identity) || tag.equals(gzip)) return tag;
+			}
+			return null;
+		}
+
+		/**
+		 * Gets the uncompressed body
+		 * @return the body's bytes
+		 */
+		public byte[] getIdentity() {
+			return identity;
+		}
+
+		/**
+		 * Gets the gzip encoded body
+		 * @return the compressed bytes, or null if the body is not worth compressing
+		 */
+		public byte[] getGzip() {
+			return gzip;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+/**
+ * Ids (jti) of revoked tokens. Revocations are stored in the database and held in memory as a Bloom filter in front of an
+ * exact set, so checking a token never touches the database and almost never touches the set: a token that was not revoked
+ * is rejected by the filter with a few bit reads. The store is rebuilt from the database periodically, which drops
+ * revocations of tokens that have since expired and picks up revocations made by other nodes.
+ */
+public class RevocationStore {
+	private static final int EXPECTED_REVOCATIONS = Integer.getInteger("scouttrack.revocations.expected", 100000);
+	private static final int HASHES = 7;			//Optimal for the ~1% false positive rate of 10 bits per revocation
+	private static final int BITS_PER_REVOCATION = 10;
+
+	private final Sql2o sql2o;
+	private volatile State state = new State(EXPECTED_REVOCATIONS);
+
+	/**
+	 * Constructs RevocationStore, creating its table if needed and loading the revocations of unexpired tokens
+	 * @param sql2o the Sql2o database object
+	 * @throws Sql2oException thrown if database error
+	 */
+	public RevocationStore(Sql2o sql2o) throws Sql2oException {
+		this.sql2o = sql2o;
+		String sql = "CREATE TABLE IF NOT EXISTS " + DatabaseNames.REVOKED_TOKEN_TABLE + " (jti bigint PRIMARY KEY, expires_at bigint NOT NULL)";
+		try (Connection conn = sql2o.open()) {
+			conn.createQuery(sql).executeUpdate();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		rebuild();
+	}
+
+	/**
+	 * Checks if a token was revoked
+	 * @param jti id of the token
+	 * @return true if the token was revoked
+	 */
+	public boolean isRevoked(long jti) {
+		State current = state;
+		return current.mightContain(jti) && current.exact.containsKey(jti);
+	}
+
+	/**
+	 * Revokes a token until it expires
+	 * @param jti id of the token
+	 * @param expiresAt time the token expires in milliseconds since the epoch
+	 * @return true if this call revoked the token, false if it was already revoked (also by a concurrent call)
+	 * @throws Sql2oException thrown if database error
+	 */
+	public boolean revoke(long jti, long expiresAt) throws Sql2oException {
+		int inserted;
+		String sql = "INSERT INTO " + DatabaseNames.REVOKED_TOKEN_TABLE + " (jti, expires_at) VALUES (:jti, :expires) ON CONFLICT DO NOTHING";
+		try (Connection conn = sql2o.beginTransaction()) {
+			inserted = conn.createQuery(sql).addParameter("jti", jti).addParameter("expires", expiresAt).executeUpdate().getResult();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		state.add(jti, expiresAt);		//Rejecting the token before the transaction commits is harmless
+		return inserted > 0;
+	}
+
+	/**
+	 * Deletes revocations of expired tokens and reloads the rest
+	 * @throws Sql2oException thrown if database error
+	 */
+	public void rebuild() throws Sql2oException {
+		long now = System.currentTimeMillis();
+		List<long[]> revoked;
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery("DELETE FROM " + DatabaseNames.REVOKED_TOKEN_TABLE + " WHERE expires_at <= :now").addParameter("now", now).executeUpdate();
+			revoked = conn.createQuery("SELECT jti, expires_at FROM " + DatabaseNames.REVOKED_TOKEN_TABLE)
+					.executeAndFetch((ResultSet rs) -> new long[] {rs.getLong("jti"), rs.getLong("expires_at")});
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+
+		State rebuilt = new State(Math.max(EXPECTED_REVOCATIONS, revoked.size() * 2));
+		for (long[] row : revoked) rebuilt.add(row[0], row[1]);
+		State previous = state;
+		state = rebuilt;
+		for (Map.Entry<Long, Long> entry : previous.exact.entrySet()) {
+			if (entry.getValue() > now && !rebuilt.exact.containsKey(entry.getKey())) rebuilt.add(entry.getKey(), entry.getValue());	//Revoked while the rebuild was loading
+		}
+	}
+
+	/**
+	 * Rebuilds the store periodically on a background thread. A failed rebuild keeps the current revocations.
+	 * @param period time between rebuilds in milliseconds
+	 */
+	public void scheduleRebuild(long period) {
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "revocation-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				rebuild();
+			} catch (Sql2oException e) {
+				//Already logged, keep the current revocations
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets number of revoked tokens held in memory
+	 * @return the number of revocations
+	 */
+	public int size() {
+		return state.exact.size();
+	}
+
+	/**
+	 * Bloom filter and exact set of one generation of the store
+	 */
+	private static class State {
+		private final AtomicLongArray bits;
+		private final int bitCount;
+		private final ConcurrentHashMap<Long, Long> exact = new ConcurrentHashMap<Long, Long>();	//jti -> expiration time
+
+		private State(int expected) {
+			long wanted = (long) expected * BITS_PER_REVOCATION;
+			this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, wanted));
+			this.bits = new AtomicLongArray((bitCount + 63) / 64);
+		}
+
+		private void add(long jti, long expiresAt) {
+			exact.put(jti, expiresAt);
+			long h1 = mix(jti);
+			long h2 = mix(h1) | 1;
+			for (int i = 0; i < HASHES; i++) {
+				int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+				long mask = 1L << bit;
+				long word;
+				do {
+					word = bits.get(bit >>> 6);
+				} while ((word & mask) == 0 && !bits.compareAndSet(bit >>> 6, word, word | mask));
+			}
+		}
+
+		private boolean mightContain(long jti) {
+			long h1 = mix(jti);
+			long h2 = mix(h1) | 1;
+			for (int i = 0; i < HASHES; i++) {
+				int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+				if ((bits.get(bit >>> 6) & (1L << bit)) == 0) return false;
+			}
+			return true;
+		}
+
+		/**
+		 * 64 bit finalizer of MurmurHash3
+		 */
+		private static long mix(long x) {
+			x ^= x >>> 33;
+			x *= 0xff51afd7ed558ccdL;
+			x ^= x >>> 33;
+			x *= 0xc4ceb9fe1a85ec53L;
+			x ^= x >>> 33;
+			return x;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Imports a troop roster streamed as CSV or newline delimited Json. Rows are read, validated and written a chunk at a time,
+ * so only one chunk of scouts is held in memory and the body is not read faster than the database accepts it.
+ * Rows that fail validation are skipped and reported; every other row is imported.
+ *
+ * CSV rosters start with a header naming the columns name, email, pwd, rank, age, req and mb. Requirements are written as
+ * rank:name pairs and merit badges as names, each list separated by semicolons. Json rows have the same fields as POST /scout
+ * without the troop.
+ */
+public class RosterImporter extends DatabaseSearcher {
+	public enum Format {CSV, NDJSON}
+
+	private static final int CHUNK_SIZE = 500;			//Scouts written per COPY
+	private static final int MAX_REPORTED_ERRORS = 1000;
+	private static final String[] CSV_FIELDS = {"name", "email", "pwd", "rank", "age", "req", "mb"};
+	private static final String[] SCOUT_COLUMNS = {"id", "name", "email", "pwd", "salt", "age", "troopid", "rankid"};
+
+	private final Sql2o sql2o;
+	private final Sql2o chunks;
+	private final int troopID;
+	private final SecureRandom random = new SecureRandom();
+
+	private final List<ScoutMapper> chunk = new ArrayList<ScoutMapper>(CHUNK_SIZE);
+	private final List<Integer> chunkLines = new ArrayList<Integer>(CHUNK_SIZE);
+	private ImportReport report;
+
+	/**
+	 * Constructs RosterImporter
+	 * @param sql2o the Sql2o database object
+	 * @param troopID id of the troop scouts are imported into
+	 */
+	public RosterImporter(Sql2o sql2o, int troopID) {
+		super(sql2o);
+		this.sql2o = sql2o;
+		this.chunks = ScopedDataSource.unscoped(sql2o);		//Outside the request's transaction, so each chunk commits as it is written
+		this.troopID = troopID;
+	}
+
+	/**
+	 * Imports every row of a roster
+	 * @param in the roster
+	 * @param format format of the roster
+	 * @return report of imported and rejected rows
+	 * @throws IOException thrown if the roster can not be read
+	 * @throws InvalidJsonDataException thrown if a CSV roster has no usable header
+	 * @throws Sql2oException thrown if database error
+	 */
+	public ImportReport importRoster(Reader in, Format format) throws IOException, InvalidJsonDataException, Sql2oException {
+		report = new ImportReport();
+		BufferedReader reader = new BufferedReader(in);
+
+		int[] columns = null;
+		if (format == Format.CSV) columns = readHeader(reader.readLine());
+		int lineNumber = format == Format.CSV ? 1 : 0;
+
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty()) continue;
+
+			try {
+				String json = format == Format.CSV ? csvRow(line, columns).toString() : line;		//CSV rows are read with the same checks as Json rows
+				ScoutMapper scout = new ScoutMapper(new JsonReader(new StringReader(json)), sql2o);
+				scout.validate(troopID);
+				chunk.add(scout);
+				chunkLines.add(lineNumber);
+			} catch (InvalidJsonDataException e) {
+				report.reject(lineNumber, e.getDetail() == null ? "Invalid or missing field" : e.getDetail());
+			} catch (JsonParseException | IllegalStateException | NumberFormatException | UnsupportedOperationException e) {
+				report.reject(lineNumber, "Could not parse row");
+			} catch (NoJsonToParseException e) {
+				report.reject(lineNumber, "Empty row");
+			}
+
+			if (chunk.size() == CHUNK_SIZE) writeChunk();
+		}
+		writeChunk();
+		return report;
+	}
+
+	/**
+	 * Maps the CSV header to the position of each scout field
+	 */
+	private int[] readHeader(String header) throws InvalidJsonDataException {
+		if (header == null) throw new InvalidJsonDataException("Roster is empty");
+		List<String> names = parseCsvLine(header);
+
+		int[] columns = new int[CSV_FIELDS.length];
+		for (int i = 0; i < CSV_FIELDS.length; i++) {
+			columns[i] = -1;
+			for (int j = 0; j < names.size(); j++) {
+				if (names.get(j).trim().equalsIgnoreCase(CSV_FIELDS[i])) columns[i] = j;
+			}
+			if (columns[i] == -1) throw new InvalidJsonDataException("Roster header is missing " + CSV_FIELDS[i]);
+		}
+		return columns;
+	}
+
+	/**
+	 * Maps a CSV row to the Json a scout is created from
+	 */
+	private JsonObject csvRow(String line, int[] columns) throws InvalidJsonDataException {
+		List<String> values = parseCsvLine(line);
+		JsonObject json = new JsonObject();
+		for (int i = 0; i < CSV_FIELDS.length; i++) {
+			if (columns[i] >= values.size()) throw new InvalidJsonDataException("Missing " + CSV_FIELDS[i]);
+			String value = values.get(columns[i]).trim();
+
+			switch (CSV_FIELDS[i]) {
+			case "req":
+				JsonArray reqs = new JsonArray();
+				for (String req : splitList(value)) {
+					int separator = req.lastIndexOf(':');
+					if (separator == -1) throw new InvalidJsonDataException("Requirement " + req + " has no rank");
+					JsonObject jsonReq = new JsonObject();
+					jsonReq.addProperty("rank", req.substring(0, separator).trim());
+					jsonReq.addProperty("name", req.substring(separator + 1).trim());
+					reqs.add(jsonReq);
+				}
+				json.add("req", reqs);
+				break;
+			case "mb":
+				JsonArray mbs = new JsonArray();
+				for (String mb : splitList(value)) mbs.add(new JsonPrimitive(mb));
+				json.add("mb", mbs);
+				break;
+			default:
+				json.addProperty(CSV_FIELDS[i], value);
+			}
+		}
+		return json;
+	}
+
+	/**
+	 * Splits a semicolon separated list, dropping empty entries
+	 */
+	private static List<String> splitList(String value) {
+		List<String> entries = new ArrayList<String>();
+		for (String entry : value.split(";")) {
+			if (!entry.trim().isEmpty()) entries.add(entry.trim());
+		}
+		return entries;
+	}
+
+	/**
+	 * Splits a CSV line into values, honouring double quoted values
+	 */
+	private static List<String> parseCsvLine(String line) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder value = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					value.append('"');
+					i++;
+				}
+				else if (c == '"') quoted = false;
+				else value.append(c);
+			}
+			else if (c == '"') quoted = true;
+			else if (c == ',') {
+				values.add(value.toString());
+				value.setLength(0);
+			}
+			else value.append(c);
+		}
+		values.add(value.toString());
+		return values;
+	}
+
+	/**
+	 * Writes the buffered scouts and their requirements and merit badges, then empties the buffer
+	 */
+	private void writeChunk() throws Sql2oException {
+		if (chunk.isEmpty()) return;
+
+		//Chunks use pooled connections of their own, returned before and after the passwords are hashed
+		try {
+			try (Connection conn = chunks.open()) {
+				rejectTakenEmails(conn);
+			}
+			if (chunk.isEmpty()) return;
+
+			String[] pwds = new String[chunk.size()];
+			byte[][] salts = new byte[chunk.size()][User.SALT_LENGTH];
+			for (int i = 0; i < chunk.size(); i++) {
+				pwds[i] = chunk.get(i).getPwd();
+				random.nextBytes(salts[i]);
+			}
+			String[] hashes = PasswordHasher.hashAll(pwds, salts);		//Waits for an import permit rather than failing the import
+
+			try (Connection conn = chunks.beginTransaction()) {
+				List<Integer> ids = conn.createQuery("SELECT nextval(pg_get_serial_sequence('" + DatabaseNames.SCOUT_TABLE + "', 'id')) FROM generate_series(1, :count)")
+						.addParameter("count", chunk.size())
+						.executeScalarList(Integer.class);
+
+				try (BinaryCopyWriter copy = new BinaryCopyWriter(conn.getJdbcConnection(), DatabaseNames.SCOUT_TABLE, SCOUT_COLUMNS)) {
+					for (int i = 0; i < chunk.size(); i++) {
+						ScoutMapper scout = chunk.get(i);
+
+						copy.startRow(SCOUT_COLUMNS.length);
+						copy.writeInt(ids.get(i));
+						copy.writeText(scout.getName());
+						copy.writeText(scout.getEmail());
+						copy.writeText(hashes[i]);
+						copy.writeBytes(salts[i]);
+						copy.writeInt(scout.getAge());
+						copy.writeInt(troopID);
+						copy.writeInt(scout.getRankID());
+					}
+					copy.finish();
+				}
+
+				try (BinaryCopyWriter copy = new BinaryCopyWriter(conn.getJdbcConnection(), DatabaseNames.SCOUT_REQ_TABLE, "scoutid", "reqid")) {
+					for (int i = 0; i < chunk.size(); i++) {
+						for (int reqID : chunk.get(i).getReqIDs()) {
+							copy.startRow(2);
+							copy.writeInt(ids.get(i));
+							copy.writeInt(reqID);
+						}
+					}
+					copy.finish();
+				}
+
+				try (BinaryCopyWriter copy = new BinaryCopyWriter(conn.getJdbcConnection(), DatabaseNames.SCOUT_MB_TABLE, "scoutid", "meritbadgeid")) {
+					for (int i = 0; i < chunk.size(); i++) {
+						for (int mbID : chunk.get(i).getMbIDs()) {
+							copy.startRow(2);
+							copy.writeInt(ids.get(i));
+							copy.writeInt(mbID);
+						}
+					}
+					copy.finish();
+				}
+				conn.commit();
+			}
+			report.imported += chunk.size();		//Only rows that are committed, a failed chunk rolls back alone
+			TroopDashboard.invalidateTroop(troopID);
+			ResponseCache.bump(ResponseCache.troop(troopID));
+		} catch (SQLException e) {
+			Sql2oException error = new Sql2oException("Error copying roster into " + DatabaseNames.SCOUT_TABLE, e);
+			System.out.println(error);
+			throw error;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		} finally {
+			chunk.clear();
+			chunkLines.clear();
+		}
+	}
+
+	/**
+	 * Rejects buffered scouts whose email is already used, by an earlier row of the chunk or by a scout in the database
+	 */
+	private void rejectTakenEmails(Connection conn) throws Sql2oException {
+		String[] emails = new String[chunk.size()];
+		for (int i = 0; i < emails.length; i++) emails[i] = chunk.get(i).getEmail();
+
+		Query query = conn.createQuery("SELECT email FROM " + DatabaseNames.SCOUT_TABLE + " WHERE email = ANY(:emails)");
+		Set<String> taken = new HashSet<String>(addArrayParameter(conn, query, "emails", "varchar", emails).executeScalarList(String.class));
+
+		for (int i = 0; i < chunk.size(); i++) {
+			if (!taken.add(chunk.get(i).getEmail())) {
+				report.reject(chunkLines.get(i), "Email " + chunk.get(i).getEmail() + " is already used");
+				chunk.remove(i);
+				chunkLines.remove(i);
+				i--;
+			}
+		}
+	}
+
+	/**
+	 * Outcome of an import
+	 */
+	public static class ImportReport {
+		private int imported;
+		private int rejected;
+		private boolean truncated;
+		private final List<RowError> errors = new ArrayList<RowError>();
+
+		private void reject(int line, String error) {
+			rejected++;
+			if (errors.size() < MAX_REPORTED_ERRORS) errors.add(new RowError(line, error));
+			else truncated = true;
+		}
+
+		/**
+		 * Gets number of scouts imported
+		 */
+		public int getImported() {
+			return imported;
+		}
+
+		/**
+		 * Gets number of rows rejected
+		 */
+		public int getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * Checks if more rows were rejected than are listed
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+
+		/**
+		 * Gets rejected rows
+		 */
+		public List<RowError> getErrors() {
+			return errors;
+		}
+	}
+
+	/**
+	 * A rejected row
+	 */
+	public static class RowError {
+		private final int line;
+		private final String error;
+
+		private RowError(int line, String error) {
+			this.line = line;
+			this.error = error;
+		}
+
+		/**
+		 * Gets line of the roster the row was on
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		/**
+		 * Gets reason the row was rejected
+		 */
+		public String getError() {
+			return error;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.sql2o.Sql2o;
+
+/**
+ * Data source that hands out leases on the current RequestScope's connection while a request is being handled,
+ * and plain pooled connections otherwise.
+ */
+public class ScopedDataSource implements DataSource {
+	private final DataSource pool;
+
+	/**
+	 * Constructs ScopedDataSource
+	 * @param pool data source connections are checked out from
+	 */
+	public ScopedDataSource(DataSource pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the underlying data source
+	 * @return the pool
+	 */
+	public DataSource getPool() {
+		return pool;
+	}
+
+	/**
+	 * Gets a Sql2o object that checks out plain pooled connections even while a request is being handled, for work that must
+	 * commit on its own or return its connection before the request ends
+	 * @param sql2o a Sql2o object, usually over a ScopedDataSource
+	 * @return Sql2o over the scoped data source's pool, or sql2o itself if it is not scoped
+	 */
+	public static Sql2o unscoped(Sql2o sql2o) {
+		DataSource source = sql2o.getDataSource();
+		if (!(source instanceof ScopedDataSource)) return sql2o;
+		return new Sql2o(((ScopedDataSource) source).getPool(), sql2o.getQuirks());
+	}
+
+	public Connection getConnection() throws SQLException {
+		RequestScope scope = RequestScope.current();
+		if (scope != null && scope.isScopeOf(pool)) return scope.lease();
+		return pool.getConnection();
+	}
+
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Scoped data source does not support per-call credentials");
+	}
+
+	public PrintWriter getLogWriter() throws SQLException {
+		return pool.getLogWriter();
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		pool.setLogWriter(out);
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+		pool.setLoginTimeout(seconds);
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return pool.getLoginTimeout();
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		return pool.getParentLogger();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) return iface.cast(this);
+		return pool.unwrap(iface);
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || pool.isWrapperFor(iface);
+	}
+}
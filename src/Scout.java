@@ -1,18 +1,36 @@
 import org.sql2o.Connection;
-import org.sql2o.Query;
 import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
+import java.io.IOException;
 import java.security.SecureRandom;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.gson.stream.JsonWriter;
 
-public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 
+public class Scout extends DatabaseSearcher implements DatabaseObject, User{
+	
+	//Fields served by writeInfo, in response order. Bit i of a field mask selects INFO_FIELDS[i].
+	public final static String[] INFO_FIELDS = {"name", "email", "age", "rank", "troop", "req", "mb"};
+	private final static int INFO_NAME = 1;
+	private final static int INFO_EMAIL = 1 << 1;
+	private final static int INFO_AGE = 1 << 2;
+	private final static int INFO_RANK = 1 << 3;
+	private final static int INFO_TROOP = 1 << 4;
+	private final static int INFO_REQ = 1 << 5;
+	private final static int INFO_MB = 1 << 6;
+	private final static int ALL_INFO_FIELDS = (1 << INFO_FIELDS.length) - 1;
+	private final static ConcurrentHashMap<Integer, String> INFO_SQL = new ConcurrentHashMap<Integer, String>();
 	
 	private int id;
 	private Sql2o sql2o;
+	private Row row;		//Loaded on first use
 	
 	/**
 	 * Constructs a new Scout object and adds its profile info to the database
@@ -33,6 +51,8 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 		
 		this.addReqList(reqID);
 		this.addMBList(mbID);
+		TroopDashboard.invalidateTroop(troopID);
+		ResponseCache.bump(ResponseCache.troop(troopID));
 	}
 	
 	/**
@@ -50,9 +70,12 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @return true on success else false
 	 */
 	public void destroy() {
+		leaveTroop();
 		super.deleteFrom(DatabaseNames.SCOUT_TABLE, id);
 		super.deleteWhere(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", id);
 		super.deleteWhere(DatabaseNames.SCOUT_MB_TABLE, "scoutid", id);
+		TroopDashboard.invalidateScout(id);
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	/**
@@ -70,7 +93,7 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryName() throws Sql2oException, NoRecordFoundException {
-		return super.queryString(DatabaseNames.SCOUT_TABLE, "name", id);
+		return row().name;
 	}
 	
 	/**
@@ -80,6 +103,9 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateName(String name) throws Sql2oException {
 		super.updateString(DatabaseNames.SCOUT_TABLE, "name", name, id);
+		if (row != null) row.name = name;
+		TroopDashboard.invalidateScout(id);
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	/**
@@ -89,7 +115,7 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryEmail() throws Sql2oException, NoRecordFoundException {
-		return super.queryString(DatabaseNames.SCOUT_TABLE, "email", id);
+		return row().email;
 	}
 	
 	/**
@@ -99,6 +125,8 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateEmail(String email) throws Sql2oException {
 		super.updateString(DatabaseNames.SCOUT_TABLE, "email", email, id);
+		if (row != null) row.email = email;
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 
 	
@@ -113,11 +141,22 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	}
 	
 	/**
-	 * Updates scout's password hash in database
-	 * @return true on success, else false
+	 * Updates scout's password in database, hashed with a new salt
+	 * @param pwd scout's password as sent by the client
+	 * @throws Sql2oException thrown on database error
+	 * @throws ServerBusyException thrown if too many passwords are being hashed
 	 */
-	public void updatePwd(String pwd) throws Sql2oException {
-		super.updateString(DatabaseNames.SCOUT_TABLE, "pwd", pwd, id);
+	public void updatePwd(String pwd) throws Sql2oException, ServerBusyException {
+		byte[] salt = getSalt();
+		String sql = "UPDATE " + DatabaseNames.SCOUT_TABLE + " SET pwd=:pwd, salt=:salt WHERE id=:id";
+		try (Connection conn = sql2o.beginTransaction()) {
+			conn.createQuery(sql).addParameter("pwd", PasswordHasher.hash(pwd, salt)).addParameter("salt", salt).addParameter("id", id).executeUpdate();
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 
 	
@@ -128,8 +167,9 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryRank() throws Sql2oException, NoRecordFoundException {
-		int rankID = super.queryInt(DatabaseNames.SCOUT_TABLE, "rankid", id);
-		return super.queryString(DatabaseNames.RANK_TABLE, "name", rankID);
+		String rank = row().rank;
+		if (rank == null) throw new NoRecordFoundException();
+		return rank;
 	}
 	
 	/**
@@ -140,8 +180,10 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public void updateRank(String rank) throws Sql2oException, NoRecordFoundException {
-		int rankID = super.searchId(DatabaseNames.RANK_TABLE, "name", rank);
+		int rankID = super.idOfRank(rank);
 		super.updateInt(DatabaseNames.SCOUT_TABLE, "rankid", rankID, id);
+		if (row != null) row.rank = rank;
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	
@@ -151,7 +193,7 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws NoRecordFoundException 
 	 */
 	public int queryAge() throws NoRecordFoundException, Sql2oException {
-			return super.queryInt(DatabaseNames.SCOUT_TABLE, "age", id);
+			return row().age;
 	}
 	
 	/**
@@ -160,6 +202,8 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateAge(int age) throws Sql2oException {
 		super.updateInt(DatabaseNames.SCOUT_TABLE, "age", age, id);
+		if (row != null) row.age = age;
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 
 	/**
@@ -169,8 +213,9 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws Sql2oException 
 	 */
 	public String queryTroop() throws Sql2oException, NoRecordFoundException {
-		int troopID = super.queryInt(DatabaseNames.SCOUT_TABLE, "troopid", id);
-		return super.queryString(DatabaseNames.TROOP_TABLE, "name", troopID);
+		String troop = row().troop;
+		if (troop == null) throw new NoRecordFoundException();
+		return troop;
 	}
 	
 	/**
@@ -180,7 +225,16 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void updateTroop(String troop) throws Sql2oException, NoRecordFoundException {
 		int troopID = super.searchId(DatabaseNames.TROOP_TABLE, "name", troop);
+		TroopDashboard.invalidateScout(id);
+		leaveTroop();
 		super.updateInt(DatabaseNames.SCOUT_TABLE, "troopid", troopID, id);
+		if (row != null) {
+			row.troop = troop;
+			row.troopID = troopID;
+		}
+		TroopDashboard.invalidateTroop(troopID);
+		ResponseCache.bump(ResponseCache.troop(troopID));
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	/**
@@ -194,34 +248,23 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	}
 	
 	/**
-	 * Get a list of partial requirements the scout has completed (Json String)
-	 * @return
-	 * @throws Sql2oException
-	 * @throws NoRecordFoundException
+	 * Get a list of partial requirements the scout has completed, with one join of the scout's requirements, the requirements and their ranks
+	 * @return the scout's partial requirements (empty if the scout has none)
+	 * @throws Sql2oException thrown by database error
 	 */
-	public List<RequirementObject> queryReq() throws Sql2oException, NoRecordFoundException {
-		//Get reqIDs
-		List <Integer> reqIDs = super.fetchIntsWhere(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", id, "reqid");
-		
-		//Get req records (name and rank id) from database using reqIDs
-		String sql = "SELECT name, rankid FROM " + DatabaseNames.REQ_TABLE + " WHERE id IN ";
-		sql = super.addCollection(sql, reqIDs.size());
-		Query q = sql2o.open().createQuery(sql);
-		q = super.addParameters(q, reqIDs);
-		List <RequirementRecord> records = q.executeAndFetch(RequirementRecord.class);
-		
-		//Get Rank Names
-		List <Integer> rankIDs = new ArrayList <Integer>();
-		for(RequirementRecord record : records) rankIDs.add(record.getRankID());
-		List <String> rankNames = super.queryStrings(DatabaseNames.RANK_TABLE, "name", rankIDs);
-		rankNames = regularize(rankNames, rankIDs);
-		
-		//Transform to Requirement objects
-		List <RequirementObject> req = new ArrayList<RequirementObject>();
-		for(int i = 0; i < records.size(); i++) req.add(new RequirementObject(records.get(i).getName(), rankNames.get(i)));
-		
-		return req;
+	public List<RequirementObject> queryReq() throws Sql2oException {
+		String sql = "SELECT rq.name, rk.name AS rank FROM " + DatabaseNames.SCOUT_REQ_TABLE + " sr"
+				+ " JOIN " + DatabaseNames.REQ_TABLE + " rq ON rq.id = sr.reqid"
+				+ " JOIN " + DatabaseNames.RANK_TABLE + " rk ON rk.id = rq.rankid"
+				+ " WHERE sr.scoutid = :id ORDER BY sr.reqid";
+		try (Connection conn = sql2o.open()) {
+			return conn.createQuery(sql).addParameter("id", id)
+					.executeAndFetch((ResultSet rs) -> new RequirementObject(rs.getString(1), rs.getString(2)));
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
 		}
+	}
 	
 	/**
 	 * Adds a partial requirement to scout in database
@@ -233,6 +276,8 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 		int rankID = super.idOfRank(rank);
 		int reqID = super.idOfRequirement(reqName, rankID);
 		super.addJoinRecord(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", "reqid", id, reqID);
+		TroopDashboard.invalidateScout(id);
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	/**
@@ -243,10 +288,11 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 * @throws NoRecordFoundException thrown if no record of rank name or requirement name is found
 	 */
 	public void destroyReq(String reqName, String rank) throws Sql2oException, NoRecordFoundException {
-		System.out.println(rank);
 		int rankID = super.idOfRank(rank);
 		int reqID = super.idOfRequirement(reqName, rankID);
-		super.deleteWhere(DatabaseNames.SCOUT_REQ_TABLE, "reqid", reqID);
+		super.deleteJoinRecord(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", "reqid", id, reqID);
+		TroopDashboard.invalidateScout(id);
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 
 	/**
@@ -257,7 +303,7 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public List <String> queryMb() throws Sql2oException, NoRecordFoundException {
 		List <Integer> meritbadgeIDs = super.fetchIntsWhere(DatabaseNames.SCOUT_MB_TABLE, "scoutid", id, "meritbadgeid"); 
-		return super.queryStrings(DatabaseNames.MB_TABLE, "name", meritbadgeIDs);
+		return super.namesOfMeritbadges(meritbadgeIDs);
 	}
 	
 	/**
@@ -270,6 +316,7 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	public void addMb(String meritbadgeName) throws Sql2oException, NoRecordFoundException {
 		int meritbadgeID = super.idOfMeritbadge(meritbadgeName);
 		super.addJoinRecord(DatabaseNames.SCOUT_MB_TABLE, "scoutid", "meritbadgeid", id, meritbadgeID);
+		ResponseCache.bump(ResponseCache.scout(id));
 	}
 	
 	/**
@@ -280,14 +327,119 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	public void destroyMb(String meritbadgeName) throws Sql2oException, NoRecordFoundException {
 		int meritbadgeID = super.idOfMeritbadge(meritbadgeName);
-		super.deleteWhere(DatabaseNames.SCOUT_MB_TABLE, "meritbadgeid", meritbadgeID);
+		super.deleteJoinRecord(DatabaseNames.SCOUT_MB_TABLE, "scoutid", "meritbadgeid", id, meritbadgeID);
+		ResponseCache.bump(ResponseCache.scout(id));
+	}
+	
+	/**
+	 * Writes the scout's profile as a Json object, reading every requested field with one query
+	 * @param fields comma separated field names (see INFO_FIELDS), or null for all fields
+	 * @param out writer the Json object is written to
+	 * @throws InvalidJsonDataException thrown if an unknown field is requested
+	 * @throws NoRecordFoundException thrown if the scout is not found
+	 * @throws Sql2oException thrown by database error
+	 * @throws IOException thrown if the Json can not be written
+	 */
+	public void writeInfo(String fields, JsonWriter out) throws InvalidJsonDataException, NoRecordFoundException, Sql2oException, IOException {
+		int mask = infoFieldMask(fields);
+		String sql = INFO_SQL.computeIfAbsent(mask, Scout::buildInfoSql);
+		
+		try (Connection conn = sql2o.open()) {
+			List <Boolean> found = conn.createQuery(sql).addParameter("id", id).executeAndFetch((ResultSet rs) -> {
+				try {
+					writeInfoRow(rs, mask, out);
+				} catch (IOException e) {
+					throw new SQLException("Could not write scout info", e);
+				}
+				return Boolean.TRUE;
+			});
+			if (found.isEmpty()) throw new NoRecordFoundException();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Converts comma separated field names to a field mask
+	 * @param fields field names, or null for all fields
+	 * @return the field mask
+	 * @throws InvalidJsonDataException thrown if an unknown field is requested
+	 */
+	private static int infoFieldMask(String fields) throws InvalidJsonDataException {
+		if (fields == null || fields.isEmpty()) return ALL_INFO_FIELDS;
+		int mask = 0;
+		for (String field : fields.split(",")) {
+			int i = Arrays.asList(INFO_FIELDS).indexOf(field.trim());
+			if (i < 0) throw new InvalidJsonDataException("Unknown field " + field.trim());
+			mask |= 1 << i;
+		}
+		return mask;
+	}
+	
+	/**
+	 * Builds the profile query for a field mask. Joins and aggregates are only added for fields that need them.
+	 * @param mask the field mask
+	 * @return the sql
+	 */
+	private static String buildInfoSql(int mask) {
+		StringBuilder select = new StringBuilder("SELECT s.id");
+		StringBuilder from = new StringBuilder(" FROM " + DatabaseNames.SCOUT_TABLE + " s");
+		
+		if ((mask & INFO_NAME) != 0) select.append(", s.name");
+		if ((mask & INFO_EMAIL) != 0) select.append(", s.email");
+		if ((mask & INFO_AGE) != 0) select.append(", s.age");
+		if ((mask & INFO_RANK) != 0) {
+			select.append(", rk.name AS rank");
+			from.append(" LEFT JOIN " + DatabaseNames.RANK_TABLE + " rk ON rk.id = s.rankid");
+		}
+		if ((mask & INFO_TROOP) != 0) {
+			select.append(", t.name AS troop");
+			from.append(" LEFT JOIN " + DatabaseNames.TROOP_TABLE + " t ON t.id = s.troopid");
+		}
+		if ((mask & INFO_REQ) != 0) {
+			String reqJoin = " FROM " + DatabaseNames.SCOUT_REQ_TABLE + " sr JOIN " + DatabaseNames.REQ_TABLE + " rq ON rq.id = sr.reqid";
+			select.append(", ARRAY(SELECT rq.name" + reqJoin + " WHERE sr.scoutid = s.id ORDER BY sr.reqid) AS req_names");
+			select.append(", ARRAY(SELECT qr.name" + reqJoin + " JOIN " + DatabaseNames.RANK_TABLE + " qr ON qr.id = rq.rankid WHERE sr.scoutid = s.id ORDER BY sr.reqid) AS req_ranks");
+		}
+		if ((mask & INFO_MB) != 0) {
+			select.append(", ARRAY(SELECT mb.name FROM " + DatabaseNames.SCOUT_MB_TABLE + " sm JOIN " + DatabaseNames.MB_TABLE + " mb ON mb.id = sm.meritbadgeid WHERE sm.scoutid = s.id ORDER BY mb.name) AS mb");
+		}
+		
+		return select.append(from).append(" WHERE s.id = :id").toString();
+	}
+	
+	/**
+	 * Writes the current row of a profile query as a Json object
+	 */
+	private static void writeInfoRow(ResultSet rs, int mask, JsonWriter out) throws SQLException, IOException {
+		out.beginObject();
+		if ((mask & INFO_NAME) != 0) out.name("name").value(rs.getString("name"));
+		if ((mask & INFO_EMAIL) != 0) out.name("email").value(rs.getString("email"));
+		if ((mask & INFO_AGE) != 0) out.name("age").value(rs.getInt("age"));
+		if ((mask & INFO_RANK) != 0) out.name("rank").value(rs.getString("rank"));
+		if ((mask & INFO_TROOP) != 0) out.name("troop").value(rs.getString("troop"));
+		if ((mask & INFO_REQ) != 0) {
+			String[] names = (String[]) rs.getArray("req_names").getArray();
+			String[] ranks = (String[]) rs.getArray("req_ranks").getArray();
+			out.name("req").beginArray();
+			for (int i = 0; i < names.length; i++) out.beginObject().name("name").value(names[i]).name("rank").value(ranks[i]).endObject();
+			out.endArray();
+		}
+		if ((mask & INFO_MB) != 0) {
+			out.name("mb").beginArray();
+			for (String mb : (String[]) rs.getArray("mb").getArray()) out.value(mb);
+			out.endArray();
+		}
+		out.endObject();
+		out.flush();
 	}
 	
 	/**
 	 * Adds scout to database
 	 * @param name scout's name
 	 * @param email scout's email
-	 * @param pwd scout's password hash (not plaintext)
+	 * @param pwd scout's password as sent by the client, hashed with the scout's salt before it is stored
 	 * @param rankID id of scout's rank in database
 	 * @param age scout's age
 	 * @param troopID id of scout's troop in database
@@ -295,31 +447,61 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	 */
 	private int addScout(String name, String email, String pwd, int rankID, int age, int troopID) {
 		byte[] salt = getSalt();
-		return storeScoutData(name, email, pwd, salt, age, troopID, rankID);
+		return storeScoutData(name, email, PasswordHasher.hash(pwd, salt), salt, age, troopID, rankID);
+	}
+	
+	/**
+	 * Gets the scout's row, reading it with its rank and troop names on first use. Updates made through this object keep it
+	 * current, so one query answers every getter called on the object.
+	 * @return the scout's row
+	 * @throws NoRecordFoundException thrown if the scout is not found
+	 * @throws Sql2oException thrown by database error
+	 */
+	private Row row() throws NoRecordFoundException, Sql2oException {
+		if (row != null) return row;
+		String sql = "SELECT s.name, s.email, s.age, rk.name AS rank, s.troopid, t.name AS troop FROM " + DatabaseNames.SCOUT_TABLE + " s"
+				+ " LEFT JOIN " + DatabaseNames.RANK_TABLE + " rk ON rk.id = s.rankid"
+				+ " LEFT JOIN " + DatabaseNames.TROOP_TABLE + " t ON t.id = s.troopid"
+				+ " WHERE s.id = :id";
+		try (Connection conn = sql2o.open()) {
+			row = conn.createQuery(sql).addParameter("id", id)
+					.executeAndFetchFirst((ResultSet rs) -> new Row(rs.getString("name"), rs.getString("email"), rs.getInt("age"), rs.getString("rank"), rs.getInt("troopid"), rs.getString("troop")));
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		if (row == null) throw new NoRecordFoundException();
+		return row;
+	}
+	
+	/**
+	 * Bumps the response version of the troop the scout is leaving, whose scout list changes
+	 * @throws Sql2oException thrown on database error
+	 */
+	private void leaveTroop() throws Sql2oException {
+		try {
+			ResponseCache.bump(ResponseCache.troop(row().troopID));
+		} catch (NoRecordFoundException e) {
+			//A scout that does not exist is in no troop's list
+		}
 	}
 	
 	/**
 	 * adds requirement ids to scout - requirement join table
 	 * @param reqID array of requirement ids to add
 	 * @throws Sql2oException thrown on database error
-	 * @throws InvalidDatabaseOperation thrown if invalid operation is performed on database
 	 */
-	private void addReqList(int[] reqID) throws Sql2oException, InvalidDatabaseOperation {
-		int[] scoutID = new int[reqID.length];
-		for(int i = 0; i < scoutID.length; i++) scoutID[i] = id;	//This is ugly, there must be a better way to do this.
-		super.addJoinRecords(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", "reqid", scoutID, reqID);
+	private void addReqList(int[] reqID) throws Sql2oException {
+		super.addJoinRecords(DatabaseNames.SCOUT_REQ_TABLE, "scoutid", "reqid", id, reqID);
 	}
 	
 	/**
 	 * adds meritbadges to scout-meritbadge join table
 	 * @param mbID array of meritbadge ids
 	 * @throws Sql2oException thrown if database error
-	 * @throws InvalidDatabaseOperation thrown if invalid operation is performed on database
 	 */
-	private void addMBList(int[] mbID) throws Sql2oException, InvalidDatabaseOperation {
-		int[] scoutID = new int[mbID.length];
-		for(int i = 0; i < scoutID.length; i++) scoutID[i] = id;	//This is ugly, there must be a better way to do this.
-		super.addJoinRecords(DatabaseNames.SCOUT_MB_TABLE, "scoutid", "meritbadgeid", scoutID, mbID);
+	private void addMBList(int[] mbID) throws Sql2oException {
+		super.addJoinRecords(DatabaseNames.SCOUT_MB_TABLE, "scoutid", "meritbadgeid", id, mbID);
 	}
 	
 	/**
@@ -367,21 +549,23 @@ public class Scout extends DatabaseSearcher implements DatabaseObject, User{
 	}
 	
 	/**
-	 * Regularlize the entries of a list by inserting copies so that its order matches another's
-	 * @param values list to be regularized
-	 * @param order order values should be in (including repetitions)
-	 * @return the regularized list;
+	 * Memoized fields of the scout's row
 	 */
-	private List<String> regularize(List <String> values, List <Integer> order) {
-		int entry = 0;
-		List <String> regularizedList = new ArrayList<String>();
+	private static class Row {
+		private String name;
+		private String email;
+		private int age;
+		private String rank;
+		private int troopID;
+		private String troop;
 		
-		for(int i = 0; i < order.size() - 1; i++) {
-			regularizedList.add(values.get(entry));
-			if(order.get(i) != order.get(i+1)) entry++;
+		private Row(String name, String email, int age, String rank, int troopID, String troop) {
+			this.name = name;
+			this.email = email;
+			this.age = age;
+			this.rank = rank;
+			this.troopID = troopID;
+			this.troop = troop;
 		}
-		regularizedList.add(values.get(entry));
-		
-		return regularizedList;
 	}
 }
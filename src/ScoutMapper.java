@@ -1,11 +1,14 @@
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 public class ScoutMapper extends UserMapper {
 	private final int MAX_SCOUT_AGE = 18;
@@ -14,11 +17,12 @@ public class ScoutMapper extends UserMapper {
 	private final int MAX_REQ_LENGTH = 5;
 	private final int MAX_MB_NUMBER = 250;
 	private final int MAX_MB_LENGTH = 70;
+	private final int MAX_RANK_LENGTH = 30;
 	
 	private final List <String> FIELDS;
 	private final String[] SCOUT_FIELDS = {"rank", "age", "req", "mb"};
 	
-	private JsonObject json;
+	private JsonReader reader;
 	private Sql2o sql2o;
 	
 	private boolean validated;
@@ -26,19 +30,24 @@ public class ScoutMapper extends UserMapper {
 	private String name;
 	private String email;
 	private String pwd;
+	private String troop;
+	private String rank;
 	private int rankID;
 	private int troopID;
 	private int age;
+	private String[] reqNames;
+	private String[] reqRanks;
+	private String[] mbNames;
 	private int[] reqID;
 	private int[] mbID;
 	
 	/**
-	 * Constructs ScoutMapper which can validate and map Json data to Scout objects
-	 * @param json Json to be mapped to scout
+	 * Constructs ScoutMapper which validates a Json object while reading it, so an invalid body is rejected before the rest of it is read
+	 * @param reader reader positioned at the Json object to be mapped to scout
 	 * @param sql2o Sql2o database object
 	 */
-	public ScoutMapper(JsonObject json, Sql2o sql2o) {
-		this.json = json;
+	public ScoutMapper(JsonReader reader, Sql2o sql2o) {
+		this.reader = reader;
 		this.sql2o = sql2o;
 		this.validated = false;
 		
@@ -50,7 +59,7 @@ public class ScoutMapper extends UserMapper {
 	 * @param sql2o the Sql2o database object
 	 */
 	public ScoutMapper(Sql2o sql2o) {
-		this.json = null;
+		this.reader = null;
 		this.sql2o = sql2o;
 		this.validated = false;
 		
@@ -65,71 +74,199 @@ public class ScoutMapper extends UserMapper {
 	 * @throws NoJsonToParseException thrown if object constructed without data
 	 */
 	public void validate() throws Sql2oException, NoRecordFoundException, InvalidJsonDataException, NoJsonToParseException {
-		if(json == null) throw new NoJsonToParseException();
+		checkFields(FIELDS, read());
 		
-		//Check json has all the necessary fields
-		for(String field : FIELDS){
-			if(!json.has(field)) {
-				throw new InvalidJsonDataException();
-			}
-		}
-				
-		DatabaseSearcher lookup = new DatabaseSearcher(sql2o);		
+		DatabaseSearcher lookup = new DatabaseSearcher(sql2o);
 		try {
-			//Check that strings are less than max size and not null
-			this.name = json.get("name").getAsString();
-			validateName(name);
-							
-			this.email = json.get("email").getAsString();
-			validateEmail(email);
-			
-			this.pwd = json.get("pwd").getAsString();
-			validatePwd(pwd);
-	
-			//Check that rank and troop are are present in database
-			this.rankID = lookup.idOfRank(json.get("rank").getAsString());
-			this.troopID = lookup.idOfTroop(json.get("troop").getAsString());
-	
-			//Check that age is a valid integer inside the scout age range
-			this.age = json.get("age").getAsInt();
-			validateAge(age);
-			
-			//Parse JsonArrays
-			JsonArray jsonReqArray = json.get("req").getAsJsonArray();
-			validateRequirements(lookup, jsonReqArray);
-			
-			JsonArray jsonMb = json.get("mb").getAsJsonArray();
-			validateMeritbadges(jsonMb);
+			this.troopID = lookup.idOfTroop(troop);
 		}
-		catch (ClassCastException | NoRecordFoundException e){
+		catch (NoRecordFoundException e){
 			throw new InvalidJsonDataException();
 		}
+		validateScout(lookup);
+	}
+	
+	/**
+	 * Checks that Json data is valid for a scout joining a known troop, such as a row of a troop roster. The "troop" field is not needed.
+	 * @param troopID id of the scout's troop
+	 * @throws Sql2oException thrown by database error
+	 * @throws InvalidJsonDataException thrown if json is malformed
+	 * @throws NoJsonToParseException thrown if object constructed without data
+	 */
+	public void validate(int troopID) throws Sql2oException, InvalidJsonDataException, NoJsonToParseException {
+		Set<String> seen = read();
+		seen.add("troop");
+		checkFields(FIELDS, seen);
 		
-		this.validated = true;
+		this.troopID = troopID;
+		validateScout(new DatabaseSearcher(sql2o));
+	}
+	
+	/**
+	 * Reads the Json object, checking types, lengths and array sizes as each field arrives. Unknown fields are skipped.
+	 * @return names of the fields read
+	 * @throws InvalidJsonDataException thrown at the first invalid field
+	 * @throws NoJsonToParseException thrown if object constructed without data
+	 */
+	private Set<String> read() throws InvalidJsonDataException, NoJsonToParseException {
+		if(reader == null) throw new NoJsonToParseException();
+		
+		Set<String> seen = new HashSet<String>();
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				switch (field) {
+				case "name":
+					this.name = validateName(nextString(reader, field, NAME_LENGTH));
+					break;
+				case "email":
+					this.email = validateEmail(nextString(reader, field, EMAIL_LENGTH));
+					break;
+				case "pwd":
+					this.pwd = validatePwd(nextString(reader, field, PWD_LENGTH));
+					break;
+				case "troop":
+					this.troop = nextString(reader, field, TroopMapper.TROOP_NAME_LENGTH);
+					break;
+				case "rank":
+					this.rank = nextString(reader, field, MAX_RANK_LENGTH);
+					break;
+				case "age":
+					this.age = validateAge(reader.nextInt());
+					break;
+				case "req":
+					readRequirements();
+					break;
+				case "mb":
+					readMeritbadges();
+					break;
+				default:
+					reader.skipValue();
+					continue;
+				}
+				seen.add(field);
+			}
+			endDocument(reader);
+		} catch (IOException | IllegalStateException | NumberFormatException e) {
+			throw new InvalidJsonDataException();		//Malformed Json or a value of the wrong type
+		}
+		return seen;
 	}
 	
 	/**
-	 * Validates that JsonArray contains valid requirements and return array of ids from database (This currently an ugly kludge, there must be a better way of doing this)
-	 * @param jsonReq
-	 * @return
-	 * @throws InvalidJsonDataException
-	 * @throws Sql2oException
-	 * @throws NoRecordFoundException
-	 */
-	public int[] validateRequirements(DatabaseSearcher lookup, JsonArray jsonReqArray) throws InvalidJsonDataException, Sql2oException, NoRecordFoundException {
-		//Check number of partial requirements is valid
-		if (jsonReqArray.size() > MAX_REQ_NUMBER) throw new InvalidJsonDataException();		//Check number of partial requirements is valid
-		reqID = new int[jsonReqArray.size()];												//Construct array to hold requirement ids
-		for (int i = 0; i < reqID.length; i++) {											//For each requirement in the array
-			JsonObject jsonReq = jsonReqArray.get(i).getAsJsonObject();						//Get requirement json object
-			String reqName = jsonReq.get("name").getAsString();								//Get requirement name
-			int reqRankID = lookup.idOfRank(jsonReq.get("rank").getAsString());				//Get requirement rank (Separate lookup)
-			if (reqRankID <= this.rankID) throw new InvalidJsonDataException();				//if requirement is for rank lower than the scout's current rank, throw an exception
-			reqID[i] = validateRequirement(lookup, reqName, reqRankID);						//validate requirement and add it to the array
+	 * Reads the requirement array into compact name and rank arrays, stopping once it holds too many requirements
+	 */
+	private void readRequirements() throws IOException, InvalidJsonDataException {
+		String[] names = new String[16];
+		String[] ranks = new String[16];
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (count == MAX_REQ_NUMBER) throw new InvalidJsonDataException("More than " + MAX_REQ_NUMBER + " requirements");
+			if (count == names.length) {
+				names = Arrays.copyOf(names, Math.min(count * 2, MAX_REQ_NUMBER));
+				ranks = Arrays.copyOf(ranks, names.length);
+			}
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				if (field.equals("name")) names[count] = nextString(reader, "req name", MAX_REQ_LENGTH);
+				else if (field.equals("rank")) ranks[count] = nextString(reader, "req rank", MAX_RANK_LENGTH);
+				else reader.skipValue();
+			}
+			reader.endObject();
+			if (names[count] == null || ranks[count] == null) throw new InvalidJsonDataException("Requirements need a name and rank");
+			count++;
 		}
+		reader.endArray();
+		this.reqNames = Arrays.copyOf(names, count);
+		this.reqRanks = Arrays.copyOf(ranks, count);
+	}
+	
+	/**
+	 * Reads the merit badge array into a compact name array, stopping once it holds too many merit badges
+	 */
+	private void readMeritbadges() throws IOException, InvalidJsonDataException {
+		String[] names = new String[16];
+		int count = 0;
+		reader.beginArray();
+		while (reader.hasNext()) {
+			if (count == MAX_MB_NUMBER) throw new InvalidJsonDataException("More than " + MAX_MB_NUMBER + " merit badges");
+			if (count == names.length) names = Arrays.copyOf(names, Math.min(count * 2, MAX_MB_NUMBER));
+			names[count++] = nextString(reader, "mb", MAX_MB_LENGTH);
+		}
+		reader.endArray();
+		this.mbNames = Arrays.copyOf(names, count);
+	}
+	
+	/**
+	 * Resolves the rank, requirements and merit badges read from the Json
+	 */
+	private void validateScout(DatabaseSearcher lookup) throws Sql2oException, InvalidJsonDataException {
+		//Check that rank is present in database
+		try {
+			this.rankID = lookup.idOfRank(rank);
+		} catch (NoRecordFoundException e) {
+			throw new InvalidJsonDataException("Unknown rank " + rank);
+		}
+		
+		//Resolve every requirement and merit badge together, reporting all unknown names at once
+		List <String> missing = new ArrayList<String>();
+		this.reqID = resolveRequirements(lookup, reqNames, reqRanks, missing);
+		this.mbID = resolveMeritbadges(lookup, mbNames, missing);
+		if (!missing.isEmpty()) throw new InvalidJsonDataException("Unknown " + String.join(", ", missing));
+		
+		this.validated = true;
+	}
+	
+	/**
+	 * Validates requirements and return array of ids from database
+	 * @param lookup DatabaseSearcher used to resolve names
+	 * @param reqNames names of the requirements
+	 * @param rankNames names of the requirements' ranks, in the same order
+	 * @return array of requirement ids
+	 * @throws InvalidJsonDataException thrown if json fails to validate or names unknown requirements
+	 * @throws Sql2oException thrown by database error
+	 */
+	public int[] validateRequirements(DatabaseSearcher lookup, String[] reqNames, String[] rankNames) throws InvalidJsonDataException, Sql2oException {
+		List <String> missing = new ArrayList<String>();
+		reqID = resolveRequirements(lookup, reqNames, rankNames, missing);
+		if (!missing.isEmpty()) throw new InvalidJsonDataException("Unknown " + String.join(", ", missing));
 		return reqID; 
 	}
 	
+	/**
+	 * Resolves every requirement with one batch lookup
+	 * @param lookup DatabaseSearcher used to resolve names
+	 * @param reqNames names of the requirements
+	 * @param rankNames names of the requirements' ranks, in the same order
+	 * @param missing list unknown requirements are added to
+	 * @return array of requirement ids (entries for unknown requirements are undefined)
+	 * @throws InvalidJsonDataException thrown if json fails to validate
+	 * @throws Sql2oException thrown by database error
+	 */
+	private int[] resolveRequirements(DatabaseSearcher lookup, String[] reqNames, String[] rankNames, List <String> missing) throws InvalidJsonDataException, Sql2oException {
+		if (reqNames.length > MAX_REQ_NUMBER) throw new InvalidJsonDataException();		//Check number of partial requirements is valid
+		for (String reqName : reqNames) {
+			if (reqName == null || reqName.length() > MAX_REQ_LENGTH) throw new InvalidJsonDataException();
+		}
+		
+		int[] ids = new int[reqNames.length];
+		int[] rankIDs = new int[reqNames.length];
+		try {
+			lookup.resolveRequirements(reqNames, rankNames, ids, rankIDs);
+		} catch (NoRecordsFoundException e) {
+			missing.addAll(e.getMissing());
+			return ids;
+		}
+		
+		for (int reqRankID : rankIDs) {
+			if (reqRankID <= this.rankID) throw new InvalidJsonDataException();		//if requirement is for rank lower than the scout's current rank, throw an exception
+		}
+		return ids;
+	}
+	
 	/**
 	 * Check that a string is a valid requirement in the database and returns id of record
 	 * @param req the name of the requirement
@@ -144,34 +281,54 @@ public class ScoutMapper extends UserMapper {
 	}
 	
 	/**
-	 * Validates a JsonArray of meritbadge names and returns any array of their ids
-	 * @param jsonMB JsonArray of meritbadge names
+	 * Validates meritbadge names and returns any array of their ids
+	 * @param lookup DatabaseSearcher used to resolve names
+	 * @param mbNames names of the meritbadges
 	 * @return array of meritbadge ids
+	 * @throws InvalidJsonDataException thrown if json fails to validate or names unknown merit badges
+	 * @throws Sql2oException thrown if database error
+	 */
+	public int[] validateMeritbadges(DatabaseSearcher lookup, String[] mbNames) throws InvalidJsonDataException, Sql2oException {
+		List <String> missing = new ArrayList<String>();
+		mbID = resolveMeritbadges(lookup, mbNames, missing);
+		if (!missing.isEmpty()) throw new InvalidJsonDataException("Unknown " + String.join(", ", missing));
+		return mbID;
+	}
+	
+	/**
+	 * Resolves every merit badge with one batch lookup
+	 * @param lookup DatabaseSearcher used to resolve names
+	 * @param mbNames names of the meritbadges
+	 * @param missing list unknown merit badges are added to
+	 * @return array of meritbadge ids (entries for unknown merit badges are undefined)
 	 * @throws InvalidJsonDataException thrown if json fails to validate
-	 * @throws NoRecordFoundException  thrown if meritbadge name not found in database
 	 * @throws Sql2oException thrown if database error
 	 */
-	public int[] validateMeritbadges(JsonArray jsonMB) throws InvalidJsonDataException, Sql2oException, NoRecordFoundException {
-		if(jsonMB.size() > MAX_MB_NUMBER) throw new InvalidJsonDataException();
+	private int[] resolveMeritbadges(DatabaseSearcher lookup, String[] mbNames, List <String> missing) throws InvalidJsonDataException, Sql2oException {
+		if(mbNames.length > MAX_MB_NUMBER) throw new InvalidJsonDataException();
+		for (String mbName : mbNames) {
+			if(mbName == null || mbName.length() > MAX_MB_LENGTH) throw new InvalidJsonDataException();
+		}
 		
-		mbID = new int[jsonMB.size()];
-		for(int i = 0; i < mbID.length; i++) {
-			mbID[i] = validateMeritbadge(jsonMB.get(i).getAsString());
+		try {
+			return lookup.resolveMeritbadges(mbNames);
+		} catch (NoRecordsFoundException e) {
+			missing.addAll(e.getMissing());
+			return new int[mbNames.length];
 		}
-		return mbID;
 	}
 	
 	/**
 	 * Verifies meritbadge name and returns id of meritbadge record
+	 * @param lookup DatabaseSearcher used to resolve names
 	 * @param mb meritbadge name
 	 * @return id of meritbadge
 	 * @throws InvalidJsonDataException thrown if meritbadge name fails validation
 	 * @throws Sql2oException thrown if database error
 	 * @throws NoRecordFoundException thrown if name not found in database
 	 */
-	public int validateMeritbadge(String mb) throws InvalidJsonDataException, Sql2oException, NoRecordFoundException {
+	public int validateMeritbadge(DatabaseSearcher lookup, String mb) throws InvalidJsonDataException, Sql2oException, NoRecordFoundException {
 		if(mb == null || mb.length() > MAX_MB_LENGTH) throw new InvalidJsonDataException();
-		DatabaseSearcher lookup = new DatabaseSearcher(sql2o);
 		return lookup.idOfMeritbadge(mb);
 	}
 	
@@ -219,6 +376,55 @@ public class ScoutMapper extends UserMapper {
 		return new Scout(this.sql2o, this.name, this.email, this.pwd, this.rankID, this.age, this.troopID, this.reqID, this.mbID);
 	}
 	
+	/**
+	 * Gets validated name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Gets validated email
+	 */
+	public String getEmail() {
+		return email;
+	}
+	
+	/**
+	 * Gets validated password hash
+	 */
+	public String getPwd() {
+		return pwd;
+	}
+	
+	/**
+	 * Gets id of validated rank
+	 */
+	public int getRankID() {
+		return rankID;
+	}
+	
+	/**
+	 * Gets validated age
+	 */
+	public int getAge() {
+		return age;
+	}
+	
+	/**
+	 * Gets ids of validated requirements
+	 */
+	public int[] getReqIDs() {
+		return reqID;
+	}
+	
+	/**
+	 * Gets ids of validated merit badges
+	 */
+	public int[] getMbIDs() {
+		return mbID;
+	}
+	
 	/**
 	 * Gets fields from super class and combines with fields in this class
 	 */
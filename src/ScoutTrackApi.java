@@ -1,50 +1,152 @@
+import static spark.Spark.after;
+import static spark.Spark.before;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.post;
 import static spark.Spark.put;
 
 import static spark.Spark.delete;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletRequestWrapper;
+
+import spark.Request;
 import spark.Response;
 
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import com.nimbusds.jose.JOSEException;
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import org.sql2o.Sql2o;
 import org.sql2o.Sql2oException;
 
 
 public class ScoutTrackApi {
-	private static final byte[] SECRET_KEY = KeyFunctions.generateSHA256();
 	private static final String DB_NAME = "scouttrack";
-	private static final String DB_USERNAME = "Charlie";
-	private static final String DB_PASSWORD = "Conway";
+	static final String DB_URL = "jdbc:postgresql://localhost:5432/" + DB_NAME;
+	static final String DB_USERNAME = "Charlie";
+	static final String DB_PASSWORD = "Conway";
+	
+	//Gson is thread-safe once built, so one instance serializes every response
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+	
+	//Connection pool settings, overridable with -Dscouttrack.pool.<setting>=<value>
+	private static final int POOL_MIN_SIZE = Integer.getInteger("scouttrack.pool.min", 2);
+	private static final int POOL_MAX_SIZE = Integer.getInteger("scouttrack.pool.max", 20);
+	private static final long POOL_ACQUIRE_TIMEOUT = Long.getLong("scouttrack.pool.acquireTimeout", 5000);	//In milliseconds
+	private static final long POOL_IDLE_TIMEOUT = Long.getLong("scouttrack.pool.idleTimeout", 600000);		//In milliseconds
+	private static final long POOL_LEAK_THRESHOLD = Long.getLong("scouttrack.pool.leakThreshold", 0);	//In milliseconds, 0 leaves leak tracking off
+	
+	private static final long CATALOG_REFRESH_PERIOD = Long.getLong("scouttrack.catalog.refreshPeriod", 21600000);	//In milliseconds
+	private static final long REVOCATION_REBUILD_PERIOD = Long.getLong("scouttrack.revocations.rebuildPeriod", 300000);	//In milliseconds
+	private static final long SESSION_PURGE_PERIOD = Long.getLong("scouttrack.sessions.purgePeriod", 3600000);	//In milliseconds
 	
+	//Token signing keys, shared by every node that serves the same users
+	private static final String KEYSTORE_FILE = System.getProperty("scouttrack.keystore", "scouttrack.jceks");
+	private static final String KEYSTORE_PASSWORD = System.getProperty("scouttrack.keystore.password");	//Required, the keystore is never left unprotected
+	private static final long KEY_MAINTENANCE_PERIOD = Long.getLong("scouttrack.keys.maintenancePeriod", 60000);	//In milliseconds
+	
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_MODIFIED = 304;
 	private static final int HTTP_BAD_REQUEST = 400;
 	private static final int HTTP_ACCESS_DENIED = 403;
 	private static final int HTTP_INTERNAL_ERROR = 500;
+	private static final int HTTP_FAILED_DEPENDENCY = 424;
+	private static final int HTTP_UNAVAILABLE = 503;
+	private static final int ANY_USER_TYPE = -1;
 	
     public static void main(String[] args){
     		
-    		Sql2o sql2o = new Sql2o("jdbc:postgresql://localhost:5432/" + DB_NAME, DB_USERNAME, DB_PASSWORD);
-    		TokenManager tokenManager = new TokenManager(sql2o, SECRET_KEY);
+    		ConnectionPool pool = new ConnectionPool(DB_URL, DB_USERNAME, DB_PASSWORD,
+    				POOL_MIN_SIZE, POOL_MAX_SIZE, POOL_ACQUIRE_TIMEOUT, POOL_IDLE_TIMEOUT, POOL_LEAK_THRESHOLD);
+    		CachingQuirks quirks = new CachingQuirks();
+    		Sql2o sql2o = new Sql2o(new ScopedDataSource(pool), quirks);
+    		
+    		//Revoked tokens must be known before any token is accepted, so a database error here stops startup
+    		RevocationStore revocations = new RevocationStore(sql2o);
+    		revocations.scheduleRebuild(REVOCATION_REBUILD_PERIOD);
+    		RefreshSessionStore sessions = new RefreshSessionStore(sql2o);
+    		sessions.schedulePurge(SESSION_PURGE_PERIOD);
+    		
+    		//Tokens signed before a restart must still verify, so startup stops if the keystore can not be loaded
+    		if (KEYSTORE_PASSWORD == null || KEYSTORE_PASSWORD.isEmpty()) throw new IllegalStateException("Set -Dscouttrack.keystore.password to the keystore's password");
+    		KeyRing keyRing;
+    		try {
+    			keyRing = new KeyRing(new File(KEYSTORE_FILE), KEYSTORE_PASSWORD.toCharArray());
+    		} catch (IOException | GeneralSecurityException e) {
+    			throw new IllegalStateException("Signing keys can not be loaded from " + KEYSTORE_FILE, e);
+    		}
+    		keyRing.scheduleMaintenance(KEY_MAINTENANCE_PERIOD);
+    		TokenManager tokenManager = new TokenManager(sql2o, keyRing, revocations, sessions);
+    		
+    		//Load ranks, requirements and merit badges into memory (lookups fall back to the database until this succeeds)
+    		try {
+    			Catalog.refresh(sql2o);
+    		} catch (Sql2oException e) {
+    			e.printStackTrace();
+    		}
+    		Catalog.scheduleRefresh(sql2o, CATALOG_REFRESH_PERIOD);
+    		
+    		/* REQUEST SCOPE */
+    		
+    		//Share one connection and transaction between every database object used by a request
+    		before((request, response) -> RequestScope.begin(pool));
+    		
+    		//Commit the request's work unless it failed
+    		after((request, response) -> {
+    			boolean success = response.raw().getStatus() < HTTP_BAD_REQUEST;
+    			if (!RequestScope.end(success) && success) {
+    				response.status(HTTP_INTERNAL_ERROR);
+    				response.type("text/plain");
+    				response.body("Database Error. Try Again Later.");
+    			}
+    		});
+    		
+    		/* AUTHENTICATION */
+    		
+    		//Resolve the caller once per request and attach it for the handlers (RequestContext.of(request))
+    		before("/scout/*", (request, response) -> authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.SCOUT_TYPE));
+    		before("/leader/*", (request, response) -> authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.LEADER_TYPE));
+    		before("/troop/*", (request, response) -> authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.LEADER_TYPE));
+    		
+    		//Creating a user needs no token, removing one does
+    		before("/scout", (request, response) -> {
+    			if (request.requestMethod().equals("DELETE")) authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.SCOUT_TYPE);
+    		});
+    		before("/leader", (request, response) -> {
+    			if (request.requestMethod().equals("DELETE")) authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.LEADER_TYPE);
+    		});
+    		
+    		//A batch is authenticated once, its operations are authorized one by one
+    		before("/batch", (request, response) -> authenticate(request, response, tokenManager, sql2o, ANY_USER_TYPE));
+    		
+    		//Pool, cache and hashing load is only shown to leaders
+    		before("/stats/*", (request, response) -> authenticate(request, response, tokenManager, sql2o, ScoutTrackToken.LEADER_TYPE));
          
             /* USER API */
             
             //Create new scout
             post("/scout", (request, response) -> {
             	try {
-            		JsonObject json;
-            	
-            		//Attempt to Parse Json            	
-            		json = new JsonParser().parse(request.body()).getAsJsonObject();
-            	            	
-            		//Attempt to Map Json data to Scout Fields
-            		ScoutMapper scoutMap = new ScoutMapper(json, sql2o);	
+            		//Map Json data to Scout Fields while it is read, rejecting invalid data before the rest of the body is read
+            		ScoutMapper scoutMap = new ScoutMapper(new JsonReader(bodyReader(request)), sql2o);	
             		scoutMap.validate();
         		
             		//Store Scout in Database and return Scout ID
@@ -59,8 +161,7 @@ public class ScoutTrackApi {
             //Remove scout
             delete("/scout", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
 	            	scout.destroy();
 	            	return "";
             	} catch (Exception e) {
@@ -71,11 +172,8 @@ public class ScoutTrackApi {
             //Create new leader
             post("/leader", (request, response) -> {
             	try {
-            		JsonObject json;       
-            		json = new JsonParser().parse(request.body()).getAsJsonObject();
-            		
             		//Map Json data to Leader object
-            		LeaderMapper leaderMap = new LeaderMapper(json, sql2o);
+            		LeaderMapper leaderMap = new LeaderMapper(new JsonReader(bodyReader(request)), sql2o);
             		leaderMap.validate();
             	
             		Leader leader = leaderMap.getLeader();
@@ -88,9 +186,8 @@ public class ScoutTrackApi {
             //Remove leader
             delete("/leader", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
-            		leader.destroy();
+            		Leader leader = RequestContext.of(request).leader();
+            		leader.destroy();		//Also drops the leader's cached troop membership
             		return "";
             	} catch (Exception e) {
             		return handle(response, e);
@@ -99,16 +196,23 @@ public class ScoutTrackApi {
             
             /* SCOUTS */
             
-            //Get all scout info
+            //Get all scout info (optionally only ?fields=name,rank,...)
             get("/scout/:id/info",  (request, response) -> {
-            	return "Not Implemented";
+            	try {
+            		Scout scout = RequestContext.of(request).scout();
+	            	JsonWriter out = jsonWriter(response);
+	            	scout.writeInfo(request.queryParams("fields"), out);
+	            	out.flush();
+	            	return "";
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
             });
         
             //Get scout email
             get("/scout/:id/email",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);	            	
+            		Scout scout = RequestContext.of(request).scout();	            	
 	            	return scout.queryEmail();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -118,8 +222,7 @@ public class ScoutTrackApi {
             //Update scout email
             put("/scout/:id/email", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.updateEmail(new ScoutMapper(sql2o).validateEmail(request.queryParams("email")));
             		return "";
             	} catch (Exception e) {
@@ -130,8 +233,7 @@ public class ScoutTrackApi {
 			//Update scout password hash
 			put("/scout/:id/pwd", (request, response) -> {
                	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
                		scout.updatePwd(new ScoutMapper(sql2o).validatePwd(request.queryParams("pwd")));
                		return "";
                	} catch (Exception e) {
@@ -142,8 +244,7 @@ public class ScoutTrackApi {
             //Get user troop
             get("/scout/:id/troop",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		return scout.queryTroop();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -153,8 +254,7 @@ public class ScoutTrackApi {
             //Update scout troop
             put("/scout/:id/troop", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.updateTroop(request.queryParams("troop"));
             		return "";
             	} catch (Exception e) {
@@ -165,8 +265,7 @@ public class ScoutTrackApi {
             //Get scout rank
             get("/scout/:id/rank",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		return scout.queryRank();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -176,8 +275,7 @@ public class ScoutTrackApi {
             //Update scout rank
             put("/scout/:id/rank", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.updateRank(request.queryParams("rank"));
             		return "";
             	} catch (Exception e) {
@@ -193,9 +291,8 @@ public class ScoutTrackApi {
             //Get scout's meritbadges
             get("/scout/:id/mb", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
-            		return new Gson().toJson(scout.queryMb());
+            		Scout scout = RequestContext.of(request).scout();
+            		return writeCached(request, response, "scout/mb", ResponseCache.scout(scout.getID()), () -> scout.queryMb());
             	} catch (Exception e) {
             		return handle(response, e);
             	}
@@ -204,8 +301,7 @@ public class ScoutTrackApi {
             //Add scout meritbadge
             put("/scout/:id/mb", (request, response) -> { 
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.addMb(request.queryParams("mbName"));
             		return"";
             	} catch (Exception e) {
@@ -216,8 +312,7 @@ public class ScoutTrackApi {
             //Remove a scout's meritbadge
             delete("/scout/:id/mb", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.destroyMb(request.queryParams("meritbadgeName"));
             		return "";
             	} catch (Exception e) {
@@ -233,10 +328,8 @@ public class ScoutTrackApi {
             //Get scout partial requirements
             get("/scout/:id/req",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
-            		List<RequirementObject> reqs =  scout.queryReq();
-            		return new Gson().toJson(reqs);
+            		Scout scout = RequestContext.of(request).scout();
+            		return writeCached(request, response, "scout/req", ResponseCache.scout(scout.getID()), () -> scout.queryReq());
             	} catch (Exception e) {
             		return handle(response, e);
             	}
@@ -245,8 +338,7 @@ public class ScoutTrackApi {
             //Add scout requirement
             put("/scout/:id/req", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.addReq(request.queryParams("name"), request.queryParams("rank"));
             		return "";
             	} catch (Exception e) {
@@ -257,8 +349,7 @@ public class ScoutTrackApi {
             //Remove scout requirement
             delete("/scout/:id/req", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.destroyReq(request.queryParams("name"), request.queryParams("rank"));
             		return "";
             	} catch (Exception e) {
@@ -269,8 +360,7 @@ public class ScoutTrackApi {
             //Get scout name
             get("/scout/:id/name",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		return scout.queryName();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -280,8 +370,7 @@ public class ScoutTrackApi {
             //Update scout name
             put("/scout/:id/name", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.updateName(new ScoutMapper(sql2o).validateName(request.queryParams("name")));
             		return "";
             	} catch (Exception e) {
@@ -292,8 +381,7 @@ public class ScoutTrackApi {
             //Get scout age
             get("/scout/:id/age",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		return scout.queryAge();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -303,8 +391,7 @@ public class ScoutTrackApi {
             //Update scout age
             put("/scout/:id/age", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateScout(request.headers("Authorization"));
-	            	Scout scout = new Scout(id, sql2o);
+            		Scout scout = RequestContext.of(request).scout();
             		scout.updateAge(new ScoutMapper(sql2o).validateAge(Integer.parseInt(request.queryParams("age"))));
             		return "";
             	} catch (Exception e) {
@@ -322,8 +409,7 @@ public class ScoutTrackApi {
             //Get leader name
             get("/leader/:id/name",  (request, response) -> { 
             	try { 
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
             		return leader.queryName();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -333,8 +419,7 @@ public class ScoutTrackApi {
             //Update leader name
             put("/leader/:id/name",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
             		leader.updateName(new LeaderMapper(sql2o).validateName(request.queryParams("name")));
             		return "";
             	} catch (Exception e) {
@@ -345,8 +430,7 @@ public class ScoutTrackApi {
             //Get leader email
             get("/leader/:id/email", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
             		return leader.queryEmail();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -356,8 +440,7 @@ public class ScoutTrackApi {
             //Update leader email
             put("/leader/:id/email", (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
             		leader.updateEmail(new LeaderMapper(sql2o).validateEmail(request.queryParams("email")));
             		return "";
             	} catch (Exception e) {
@@ -368,8 +451,7 @@ public class ScoutTrackApi {
             //Get leader troop
             get("/leader/:id/troop",  (request, response) -> {
             	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
             		return leader.queryTroop();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -379,8 +461,7 @@ public class ScoutTrackApi {
             //Update leader troop
             put("/leader/:id/troop", (request, response) -> {
               	try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
               		leader.updateTroop(request.queryParams("troop"));
               		return "";
               	} catch (Exception e) {
@@ -391,8 +472,7 @@ public class ScoutTrackApi {
 			//Update leader password hash
 			put("/leader/:id/pwd", (request, response) -> {
 				try {
-            		int id = tokenManager.authenticateLeader(request.headers("Authorization"));
-            		Leader leader = new Leader(id, sql2o);
+            		Leader leader = RequestContext.of(request).leader();
 					leader.updatePwd(new LeaderMapper(sql2o).validatePwd(request.queryParams("pwd")));
 					return "";
 				} catch (Exception e) {
@@ -405,10 +485,7 @@ public class ScoutTrackApi {
             //Create new troop
             post("/troop", (request, response) -> {
             	try{
-            		JsonObject json;
-            		json = new JsonParser().parse(request.body()).getAsJsonObject();
-            	
-            		TroopMapper troopMap = new TroopMapper(json, sql2o);
+            		TroopMapper troopMap = new TroopMapper(new JsonReader(bodyReader(request)), sql2o);
             		troopMap.validate();
 
             		Troop troop = troopMap.getTroop();            	
@@ -418,22 +495,52 @@ public class ScoutTrackApi {
             	}
             });
             
+            //Import troop roster (CSV or newline delimited Json)
+            post("/troop/:id/import", (request, response) -> {
+            	try {
+            		int id = RequestContext.of(request).getTroopID();
+            		RosterImporter importer = new RosterImporter(sql2o, id);
+            		return GSON.toJson(importer.importRoster(bodyReader(request), rosterFormat(request)));
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
+            //Export troop roster (CSV or newline delimited Json)
+            get("/troop/:id/export", (request, response) -> {
+            	try {
+            		int id = RequestContext.of(request).getTroopID();
+            		RosterImporter.Format format = request.queryParams("format") == null ? RosterImporter.Format.NDJSON : rosterFormat(request);
+            		
+            		//Rows are written straight to the response as they are read, committing it
+            		response.type(format == RosterImporter.Format.CSV ? "text/csv" : "application/x-ndjson");
+            		Writer out = new BufferedWriter(new OutputStreamWriter(response.raw().getOutputStream(), StandardCharsets.UTF_8));
+            		new TroopExporter(sql2o, id).export(out, format);
+            		return "";
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
             //Remove troop
             delete("/troop/:id", (request, response) -> {
             	return "Not Implemented";
             });
             
-            //Get troop information
+            //Get troop information (progress of every scout as a columnar matrix)
             get("/troop/:id/info", (request, response) -> {
-            	return "Not Implemented";
+            	try {
+            		int id = RequestContext.of(request).getTroopID();
+            		return TroopDashboard.query(sql2o, id);
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
             });
             
             //Get troop name
             get("/troop/:id/name",  (request, response) -> {
             	try {
-            		int id = Integer.parseInt(request.params("id"));
-            		tokenManager.authenticateTroopLeader(request.headers("Authorization"), id);
-            		Troop troop = new Troop(id, sql2o);
+            		Troop troop = RequestContext.of(request).troop();
             		return troop.queryName();
             	} catch (Exception e) {
             		return handle(response, e);
@@ -443,9 +550,7 @@ public class ScoutTrackApi {
             //Update troop name
             put("/troop/:id/name", (request, response) -> {
             	try {
-            		int id = Integer.parseInt(request.params("id"));
-            		tokenManager.authenticateTroopLeader(request.headers("Authorization"), id);
-            		Troop troop = new Troop(id, sql2o);
+            		Troop troop = RequestContext.of(request).troop();
             		troop.updateName(new TroopMapper(sql2o).validateName(request.queryParams("name")));
             		return "";
             	} catch (Exception e) {
@@ -456,10 +561,32 @@ public class ScoutTrackApi {
             //Get troop scout list
             get("/troop/:id/scouts",  (request, response) -> {
             	try {
-            		int id = Integer.parseInt(request.params("id"));
-            		tokenManager.authenticateTroopLeader(request.headers("Authorization"), id);
-            		Troop troop = new Troop(id, sql2o);
-            		return new Gson().toJson(troop.queryScouts());
+            		Troop troop = RequestContext.of(request).troop();
+            		return writeCached(request, response, "troop/scouts", ResponseCache.troop(troop.getID()), () -> troop.queryScouts());
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
+            //Sign off a requirement for many scouts of the troop
+            put("/troop/:id/req", (request, response) -> {
+            	try {
+            		Troop troop = RequestContext.of(request).troop();
+            		List<Integer> signedOff = troop.signOffRequirement(request.queryParams("name"), request.queryParams("rank"), new TroopMapper(sql2o).validateScoutIDs(request.queryParams("scouts")));
+            		response.type("application/json");
+            		return GSON.toJson(signedOff);
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
+            //Sign off a merit badge for many scouts of the troop
+            put("/troop/:id/mb", (request, response) -> {
+            	try {
+            		Troop troop = RequestContext.of(request).troop();
+            		List<Integer> signedOff = troop.signOffMeritbadge(request.queryParams("mbName"), new TroopMapper(sql2o).validateScoutIDs(request.queryParams("scouts")));
+            		response.type("application/json");
+            		return GSON.toJson(signedOff);
             	} catch (Exception e) {
             		return handle(response, e);
             	}
@@ -483,11 +610,8 @@ public class ScoutTrackApi {
             //Get troop leaders
             get("troop/:id/leaders", (request, response) -> {
             	try {
-            		int id = Integer.parseInt(request.params("id"));
-            		tokenManager.authenticateTroopLeader(request.headers("Authorization"), id);
-            		Troop troop = new Troop(id, sql2o);
-            		response.body(new Gson().toJson(troop.queryLeaders()));
-            		return "";
+            		Troop troop = RequestContext.of(request).troop();
+            		return writeJson(response, troop.queryLeaders());
             	} catch (Exception e) {
             		return handle(response, e);
             	}
@@ -510,39 +634,253 @@ public class ScoutTrackApi {
            	
     		/* TOKEN API */
     		
-            //get Token ?Need database of Tokens?
+            //get access and refresh tokens
             get("/token", (request, response)-> {
                 try {
-                	return tokenManager.getToken(request.queryParams("email"), request.queryParams("pwd"), Integer.parseInt(request.queryParams("type")));
+                	boolean compact = "binary".equals(request.queryParams("format"));		//Internal clients can ask for compact tokens
+                	return GSON.toJson(tokenManager.getToken(request.queryParams("email"), request.queryParams("pwd"), Integer.parseInt(request.queryParams("type")), compact));
                 } catch (Exception e) {
                 	return handle(response, e);
                 }
             });
             
-            //renew token
+            //renew tokens with a refresh token
             get("/token/renew", (request, response)->{
-            	return "Not Implemented";
+            	try {
+            		return GSON.toJson(tokenManager.renewToken(request.headers("Authorization")));
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
             });
         
             //destroy token
             delete("/token", (request, response) -> {
-            	return "Not Implemented";
+            	try {
+            		tokenManager.revokeToken(request.headers("Authorization"));
+            		return "";
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
+            /* BATCH API */
+            
+            //Run many operations with one authentication and one transaction, all or nothing if atomic=true
+            post("/batch", (request, response) -> {
+            	try {
+            		RequestContext context = RequestContext.of(request);
+            		boolean atomic = Boolean.parseBoolean(request.queryParams("atomic"));
+            		List<BatchOperation> operations = BatchOperation.readAll(new JsonReader(bodyReader(request)));
+            		List<BatchResult> results = new ArrayList<BatchResult>(operations.size());
+            		int failedStatus = 0;
+            		for (BatchOperation operation : operations) {
+            			if (failedStatus != 0) {
+            				results.add(new BatchResult(HTTP_FAILED_DEPENDENCY, "Not Run. An Earlier Operation Failed."));
+            				continue;
+            			}
+            			try {
+            				if (atomic) operation.run(context, tokenManager, sql2o);
+            				else context.getScope().isolate(() -> operation.run(context, tokenManager, sql2o));
+            				results.add(new BatchResult(HTTP_OK, ""));
+            			} catch (Exception e) {
+            				String body = handle(response, e);		//Sets the status the operation would have had on its own
+            				results.add(new BatchResult(response.raw().getStatus(), body));
+            				if (atomic) failedStatus = response.raw().getStatus();
+            				response.status(HTTP_OK);
+            			}
+            		}
+            		if (failedStatus != 0) response.status(failedStatus);		//Rolls back the whole batch
+            		response.type("application/json");
+            		return GSON.toJson(results);	//Not streamed, so a failed commit can still be reported
+            	} catch (Exception e) {
+            		return handle(response, e);
+            	}
+            });
+            
+            /* STATS API */
+            
+            //Get connection pool usage
+            get("/stats/pool", (request, response) -> {
+            	return writeJson(response, pool.getStats());
+            });
+            
+            //Get password hashing load and latency
+            get("/stats/passwords", (request, response) -> {
+            	return writeJson(response, PasswordHasher.getStats());
+            });
+            
+            //Get hit rates of statement and data caches
+            get("/stats/caches", (request, response) -> {
+            	List<CacheStats> stats = new ArrayList<CacheStats>();
+            	stats.add(SqlTemplates.getStats());
+            	stats.add(quirks.getStats());
+            	stats.add(pool.getStatementStats());
+            	stats.add(TroopDashboard.getStats());
+            	stats.add(tokenManager.getCacheStats());
+            	stats.add(LeaderTroopCache.getStats());
+            	stats.add(ResponseCache.getStats());
+            	return writeJson(response, stats);
             });
             
         }
             
     	/**
-    	 * Handles exceptions caused by http requests and returns appropriate response
+    	 * Gets format of an uploaded roster from the format parameter or the content type
+    	 * @param request Spark Request object
+    	 * @return the roster format
+    	 * @throws InvalidJsonDataException thrown if the format is not supported
+    	 */
+    	private static RosterImporter.Format rosterFormat(Request request) throws InvalidJsonDataException {
+    		String format = request.queryParams("format");
+    		if (format == null) format = request.contentType();
+    		if (format != null) {
+    			format = format.toLowerCase();
+    			if (format.contains("csv")) return RosterImporter.Format.CSV;
+    			if (format.contains("json")) return RosterImporter.Format.NDJSON;
+    		}
+    		throw new InvalidJsonDataException("Roster must be csv or ndjson");
+    	}
+    	
+    	/**
+    	 * Opens a Json writer over the response's output stream, so a response is serialized straight to the client instead of
+    	 * being built as a String first. Only read-only routes stream: writing commits the response before the request's
+    	 * transaction does.
+    	 * @param response Spark Response object
+    	 * @return writer over the response body
+    	 * @throws IOException thrown if the response can not be written
+    	 */
+    	private static JsonWriter jsonWriter(Response response) throws IOException {
+    		response.type("application/json");
+    		return new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.raw().getOutputStream(), StandardCharsets.UTF_8)));
+    	}
+    	
+    	/**
+    	 * Serializes a value straight to the response's output stream
+    	 * @param response Spark Response object
+    	 * @param value the value to serialize
+    	 * @return empty body, Spark has nothing left to write
+    	 * @throws IOException thrown if the response can not be written
+    	 */
+    	private static String writeJson(Response response, Object value) throws IOException {
+    		JsonWriter out = jsonWriter(response);
+    		GSON.toJson(value, value.getClass(), out);
+    		out.flush();
+    		return "";
+    	}
+    	
+    	/**
+    	 * Answers a read route from the response cache, rendering the body first on a miss. A request whose If-None-Match names
+    	 * the body's ETag gets 304 and no body; any other gets the bytes, gzip encoded if the client accepts it.
+    	 * @param request Spark Request object
+    	 * @param response Spark Response object
+    	 * @param route name of the route
+    	 * @param entity the scout or troop the body is about (ResponseCache.scout, ResponseCache.troop)
+    	 * @param render reads the value to serialize on a miss
+    	 * @return empty body, Spark has nothing left to write
+    	 * @throws Exception thrown by render, or if the response can not be written
+    	 */
+    	private static String writeCached(Request request, Response response, String route, String entity, Callable<Object> render) throws Exception {
+    		long version = ResponseCache.version(entity);
+    		response.header("Vary", "Accept-Encoding");
+    		ResponseCache.Body body = ResponseCache.get(route, entity, version);
+    		if (body == null) body = ResponseCache.put(route, entity, version, GSON.toJson(render.call()).getBytes(StandardCharsets.UTF_8));
+    		
+    		String matched = body.match(request.headers("If-None-Match"));
+    		if (matched != null) {
+    			response.header("ETag", matched);
+    			response.status(HTTP_NOT_MODIFIED);
+    			return "";
+    		}
+    		boolean gzip = body.getGzip() != null && acceptsGzip(request);
+    		byte[] bytes = gzip ? body.getGzip() : body.getIdentity();
+    		response.type("application/json");
+    		response.header("ETag", body.getEtag(gzip));
+    		if (gzip) response.header("Content-Encoding", "gzip");
+    		response.raw().setContentLength(bytes.length);
+    		OutputStream out = response.raw().getOutputStream();
+    		out.write(bytes);
+    		out.flush();
+    		return "";
+    	}
+    	
+    	/**
+    	 * Checks if the client accepts gzip encoded responses
+    	 * @param request Spark Request object
+    	 * @return true if Accept-Encoding lists gzip without q=0
+    	 */
+    	private static boolean acceptsGzip(Request request) {
+    		String accepted = request.headers("Accept-Encoding");
+    		if (accepted == null) return false;
+    		for (String coding : accepted.split(",")) {
+    			String[] parts = coding.split(";");
+    			if (parts[0].trim().equalsIgnoreCase("gzip")) return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+    		}
+    		return false;
+    	}
+    	
+    	/**
+    	 * Opens the request body as a stream. Spark's request wrapper reads the whole body into memory, so the underlying request is read instead.
+    	 * @param request Spark Request object
+    	 * @return reader over the request body
+    	 * @throws IOException thrown if the body can not be read
+    	 */
+    	private static Reader bodyReader(Request request) throws IOException {
+    		ServletRequest raw = request.raw();
+    		if (raw instanceof ServletRequestWrapper) raw = ((ServletRequestWrapper) raw).getRequest();
+    		return new InputStreamReader(raw.getInputStream(), StandardCharsets.UTF_8);
+    	}
+    	
+        /**
+         * Authenticates the request's token and attaches the caller to the request. The id in the path must be the caller's own
+         * id on user routes, and a troop the caller leads on troop routes. A request that fails is answered here and its scope
+         * is rolled back, since after filters do not run once a before filter halts.
+         * Batch requests accept any type of user and leave authorization to each operation.
+         * @param request the request
+         * @param response the response
+         * @param tokenManager verifies the token
+         * @param sql2o the Sql2o database object
+         * @param userType type of user the route is for, or ANY_USER_TYPE
+         */
+        private static void authenticate(Request request, Response response, TokenManager tokenManager, Sql2o sql2o, int userType) {
+        	try {
+        		String token = request.headers("Authorization");
+        		TokenPrincipal principal = userType == ANY_USER_TYPE ? tokenManager.authenticateUser(token) : tokenManager.authenticateUser(token, userType);
+        		String[] path = request.uri().split("/");	//"", resource, id, field
+        		RequestContext context;
+        		if (path.length < 3 || path[1].equals("stats")) context = new RequestContext(principal, sql2o);	//No id in the path
+        		else if (path[1].equals("troop")) {
+        			int troopID = Integer.parseInt(path[2]);
+        			tokenManager.authorizeTroop(principal.getId(), troopID);
+        			context = new RequestContext(principal, troopID, sql2o);
+        		}
+        		else if (Integer.parseInt(path[2]) == principal.getId()) context = new RequestContext(principal, sql2o);
+        		else throw new AuthenticationException();
+        		context.attach(request);
+        	} catch (Exception e) {
+        		String body = handle(response, e);
+        		RequestScope.end(false);
+        		halt(response.raw().getStatus(), body);
+        	}
+        }
+        
+    	/**
+    	 * Handles exceptions caused by http requests and returns appropriate response. Replies are plain text, so details
+    	 * echoed from the request are never rendered as html.
     	 * @param response Spark Response object
     	 * @param e an exceptions
     	 * @return reply to http request
     	 */
         private static String handle(Response response, Exception e) {
+       		 response.type("text/plain");
        		 if (e instanceof NoRecordFoundException) {
        			 response.status(HTTP_BAD_REQUEST);
        			 e.printStackTrace();
        			 return "Request Data Invalid, No Record Found";
        		 }
+       		 else if (e instanceof InvalidJsonDataException && ((InvalidJsonDataException) e).getDetail() != null) {
+       			response.status(HTTP_BAD_REQUEST);
+       			return "Request Invalid. " + ((InvalidJsonDataException) e).getDetail();
+       		 }
        		 else if (e instanceof JsonSyntaxException || e instanceof InvalidJsonDataException || e instanceof NumberFormatException) {
        			response.status(HTTP_BAD_REQUEST);
        			return "Could Not Parse Request. Request Invalid.";
@@ -556,6 +894,11 @@ public class ScoutTrackApi {
        			 response.status(HTTP_ACCESS_DENIED);
        			 return "Could Not Perform Secure Authentication.";
        		 }
+       		 else if(e instanceof ServerBusyException) {
+       			 response.status(HTTP_UNAVAILABLE);
+       			 response.header("Retry-After", "1");
+       			 return "Server Busy. Try Again Later.";
+       		 }
        		 else if(e instanceof Sql2oException) {
        			 e.printStackTrace();
        			 response.status(HTTP_INTERNAL_ERROR);
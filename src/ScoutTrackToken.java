@@ -1,6 +1,10 @@
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
 import java.util.Calendar;
 import java.util.Date;
 
+import javax.crypto.SecretKey;
+
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
@@ -12,15 +16,27 @@ import com.nimbusds.jwt.SignedJWT;
 
 public class ScoutTrackToken {
 	private byte[] secretKey;
+	private JWSSigner signer;
+	private String keyID;
 	private int userID;
 	private int userType;
+	private long jti;
+	private boolean refresh;
+	private Date expiration;
+	
+	private static final SecureRandom RANDOM = new SecureRandom();
 	
-	private int TOKEN_LIFESPAN = 60; //In days
+	private int TOKEN_LIFESPAN = 60; //In days, for refresh tokens
+	private static final int ACCESS_TOKEN_LIFESPAN = Integer.getInteger("scouttrack.token.accessLifespan", 15);	//In minutes
 	private String SCOUTTRACK_IDENTIFIER = "http://scouttrack.org";
 	
 	public final static int SCOUT_TYPE = 0;
 	public final static int LEADER_TYPE = 1;
 	
+	//Values of the "use" claim
+	public final static String ACCESS_USE = "access";
+	public final static String REFRESH_USE = "refresh";
+	
 	/**
 	 * Initializes Token Info 
 	 * @param secretKey key for token
@@ -31,6 +47,66 @@ public class ScoutTrackToken {
 		this.secretKey = secretKey;
 		this.userID = userID;
 		this.userType = userType;
+		this.jti = RANDOM.nextLong();
+		this.expiration = getExpiration(Calendar.MINUTE, ACCESS_TOKEN_LIFESPAN);
+	}
+	
+	/**
+	 * Initializes Token Info with a shared signer
+	 * @param signer signer for token (MAC signers are thread-safe and can be reused)
+	 * @param keyID kid of the signing key, written in the token header
+	 * @param userID user's id (from database)
+	 * @param userType user's account type (Scout, Leader, etc.)
+	 */
+	public ScoutTrackToken(JWSSigner signer, String keyID, int userID, int userType) {
+		this(signer, keyID, userID, userType, false);
+	}
+	
+	/**
+	 * Initializes Token Info for a short lived access token or a long lived refresh token
+	 * @param signer signer for token (MAC signers are thread-safe and can be reused)
+	 * @param keyID kid of the signing key, written in the token header
+	 * @param userID user's id (from database)
+	 * @param userType user's account type (Scout, Leader, etc.)
+	 * @param refresh true for a refresh token, which can only be used to renew tokens
+	 */
+	public ScoutTrackToken(JWSSigner signer, String keyID, int userID, int userType, boolean refresh) {
+		this.signer = signer;
+		this.keyID = keyID;
+		this.userID = userID;
+		this.userType = userType;
+		this.jti = RANDOM.nextLong();
+		this.refresh = refresh;
+		this.expiration = refresh ? getExpiration(Calendar.DATE, TOKEN_LIFESPAN) : getExpiration(Calendar.MINUTE, ACCESS_TOKEN_LIFESPAN);
+	}
+	
+	/**
+	 * Initializes Token Info for a refresh token of a login session
+	 * @param signer signer for token (MAC signers are thread-safe and can be reused)
+	 * @param keyID kid of the signing key, written in the token header
+	 * @param userID user's id (from database)
+	 * @param userType user's account type (Scout, Leader, etc.)
+	 * @param jti the token's id, naming its session and generation (see RefreshSessionStore)
+	 */
+	public ScoutTrackToken(JWSSigner signer, String keyID, int userID, int userType, long jti) {
+		this(signer, keyID, userID, userType, true);
+		this.jti = jti;
+	}
+	
+	/**
+	 * Gets the time the token expires
+	 * @return the expiration date
+	 */
+	public Date getExpiration() {
+		return expiration;
+	}
+	
+	/**
+	 * Gets the token's id, which is used to revoke it
+	 * @return the jti
+	 */
+	public long getJti() {
+		return jti;
 	}
 	
 	/**
@@ -39,23 +115,35 @@ public class ScoutTrackToken {
 	 * @throws JOSEException thrown if encryption fails
 	 */
 	public String getSerialToken() throws JOSEException, KeyLengthException {
-		JWSSigner signer = new MACSigner(secretKey);	//Prepare to sign token with secret key
-		JWTClaimsSet claimsSet = new JWTClaimsSet.Builder().claim("usr", userID).claim("typ", userType) //Add private claims
-				.issuer(SCOUTTRACK_IDENTIFIER).expirationTime(getExpiration(TOKEN_LIFESPAN)).build();	//Add standard claims
+		JWSSigner signer = this.signer != null ? this.signer : new MACSigner(secretKey);	//Prepare to sign token with secret key
+		JWTClaimsSet claimsSet = new JWTClaimsSet.Builder().claim("usr", userID).claim("typ", userType).claim("use", refresh ? REFRESH_USE : ACCESS_USE) //Add private claims
+				.issuer(SCOUTTRACK_IDENTIFIER).expirationTime(expiration).jwtID(String.format("%016x", jti)).build();	//Add standard claims
 		
-		SignedJWT token = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claimsSet);	//Build token
+		SignedJWT token = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.HS256).keyID(keyID).build(), claimsSet);	//Build token, naming the key that verifies it
 		token.sign(signer);			//Sign token
 		return token.serialize();	//Convert token to String
 	}
 	
+	/**
+	 * Builds the compact binary form of the token (see BinaryToken) for internal clients
+	 * @param key secret of the signing key
+	 * @param keyNumber number of the signing key in the key ring
+	 * @return the base64url encoded token
+	 * @throws GeneralSecurityException thrown if signing fails
+	 */
+	public String getCompactToken(SecretKey key, long keyNumber) throws GeneralSecurityException {
+		return BinaryToken.encode(key, keyNumber, userID, userType, refresh, expiration.getTime(), jti);
+	}
+	
 	/**
 	 * Safely calculate expiration date of token.
-	 * @param numberOfDaysValid period for which token is valid
+	 * @param unit Calendar field the period is measured in
+	 * @param period period for which token is valid
 	 * @return Date on which token expires
 	 */
-	private Date getExpiration(int numberOfDaysValid) {
+	private Date getExpiration(int unit, int period) {
 		Calendar cal = Calendar.getInstance();
-		cal.add(Calendar.DATE, numberOfDaysValid);
+		cal.add(unit, period);
 		return cal.getTime();
 	}
 }
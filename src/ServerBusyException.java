@@ -0,0 +1,11 @@
+
+/**
+ * Thrown when work is rejected because the pool that runs it is full. Unchecked, like Sql2oException, so it can pass through
+ * the user constructors that hash passwords.
+ */
+@SuppressWarnings("serial")
+public class ServerBusyException extends RuntimeException {
+	public ServerBusyException() {
+		super("Server Busy");
+	}
+}
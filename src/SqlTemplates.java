@@ -0,0 +1,149 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the SQL statements DatabaseSearcher generates. Tables and columns come from a small fixed set
+ * (see DatabaseNames), so each statement shape is built once and handed out after that instead of being concatenated
+ * again on every call.
+ */
+public class SqlTemplates {
+	private static final ConcurrentHashMap<Shape, String> TEMPLATES = new ConcurrentHashMap<Shape, String>();
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private enum Kind {SELECT_BY_ID, SELECT_BY_IDS, SELECT_WHERE, UPDATE_BY_ID, DELETE_WHERE, INSERT_PAIR, DELETE_PAIR}
+
+	/**
+	 * SELECT column FROM table WHERE id = :id
+	 */
+	public static String selectById(String table, String column) {
+		return template(Kind.SELECT_BY_ID, table, column, null);
+	}
+
+	/**
+	 * SELECT column FROM table WHERE id = ANY(:ids)
+	 */
+	public static String selectByIds(String table, String column) {
+		return template(Kind.SELECT_BY_IDS, table, column, null);
+	}
+
+	/**
+	 * SELECT retrieveColumn FROM table WHERE checkColumn = :value
+	 */
+	public static String selectWhere(String table, String checkColumn, String retrieveColumn) {
+		return template(Kind.SELECT_WHERE, table, checkColumn, retrieveColumn);
+	}
+
+	/**
+	 * UPDATE table SET column = :value WHERE id = :id
+	 */
+	public static String updateById(String table, String column) {
+		return template(Kind.UPDATE_BY_ID, table, column, null);
+	}
+
+	/**
+	 * DELETE FROM table WHERE column = :value
+	 */
+	public static String deleteWhere(String table, String column) {
+		return template(Kind.DELETE_WHERE, table, column, null);
+	}
+
+	/**
+	 * INSERT INTO table (firstColumn, secondColumn) VALUES (:firstID, :secondID)
+	 */
+	public static String insertPair(String table, String firstColumn, String secondColumn) {
+		return template(Kind.INSERT_PAIR, table, firstColumn, secondColumn);
+	}
+
+	/**
+	 * DELETE FROM table WHERE firstColumn = :firstID AND secondColumn = :secondID
+	 */
+	public static String deletePair(String table, String firstColumn, String secondColumn) {
+		return template(Kind.DELETE_PAIR, table, firstColumn, secondColumn);
+	}
+
+	/**
+	 * Gets hit and miss counts of the registry
+	 * @return the registry's statistics
+	 */
+	public static CacheStats getStats() {
+		return new CacheStats("sql templates", hits.get(), misses.get(), TEMPLATES.size());
+	}
+
+	/**
+	 * Looks up a statement shape, building it on first use
+	 */
+	private static String template(Kind kind, String table, String first, String second) {
+		Shape shape = new Shape(kind, table, first, second);
+		String sql = TEMPLATES.get(shape);
+		if (sql != null) {
+			hits.incrementAndGet();
+			return sql;
+		}
+		misses.incrementAndGet();
+		sql = build(shape);
+		String existing = TEMPLATES.putIfAbsent(shape, sql);
+		return existing == null ? sql : existing;
+	}
+
+	/**
+	 * Builds the SQL text of a statement shape
+	 */
+	private static String build(Shape shape) {
+		switch (shape.kind) {
+		case SELECT_BY_ID:
+			return "SELECT " + shape.first + " FROM " + shape.table + " WHERE id = :id";
+		case SELECT_BY_IDS:
+			return "SELECT " + shape.first + " FROM " + shape.table + " WHERE id = ANY(:ids)";
+		case SELECT_WHERE:
+			return "SELECT " + shape.second + " FROM " + shape.table + " WHERE " + shape.first + " = :value";
+		case UPDATE_BY_ID:
+			return "UPDATE " + shape.table + " SET " + shape.first + " = :value WHERE id = :id";
+		case DELETE_WHERE:
+			return "DELETE FROM " + shape.table + " WHERE " + shape.first + " = :value";
+		case INSERT_PAIR:
+			return "INSERT INTO " + shape.table + " (" + shape.first + ", " + shape.second + ") VALUES (:firstID, :secondID)";
+		case DELETE_PAIR:
+			return "DELETE FROM " + shape.table + " WHERE " + shape.first + " = :firstID AND " + shape.second + " = :secondID";
+		default:
+			throw new IllegalArgumentException(shape.kind.name());
+		}
+	}
+
+	/**
+	 * Key of a statement shape
+	 */
+	private static final class Shape {
+		private final Kind kind;
+		private final String table;
+		private final String first;
+		private final String second;
+		private final int hash;
+
+		private Shape(Kind kind, String table, String first, String second) {
+			this.kind = kind;
+			this.table = table;
+			this.first = first;
+			this.second = second;
+			int h = kind.hashCode();
+			h = 31 * h + table.hashCode();
+			h = 31 * h + (first == null ? 0 : first.hashCode());
+			h = 31 * h + (second == null ? 0 : second.hashCode());
+			this.hash = h;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Shape)) return false;
+			Shape other = (Shape) o;
+			return kind == other.kind && table.equals(other.table) && equal(first, other.first) && equal(second, other.second);
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGStatement;
+
+/**
+ * Prepared statements kept open on one pooled connection. A cached statement is prepared on the server on its
+ * first execution, so PostgreSQL plans each statement shape once per connection instead of once per query.
+ * Closing a handed out statement only returns it to the cache.
+ */
+public class StatementCache {
+	private final Connection physical;
+	private final int capacity;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private final Map<String, CachedStatement> statements;
+	private final Map<String, CachedStatement> keyStatements;	//Statements returning generated keys
+
+	/**
+	 * Constructs StatementCache
+	 * @param physical the connection statements are prepared on
+	 * @param capacity number of statements kept open for each kind of statement
+	 * @param hits counter incremented when a cached statement is reused
+	 * @param misses counter incremented when a statement has to be prepared
+	 */
+	public StatementCache(Connection physical, int capacity, AtomicLong hits, AtomicLong misses) {
+		this.physical = physical;
+		this.capacity = capacity;
+		this.hits = hits;
+		this.misses = misses;
+		this.statements = lruMap();
+		this.keyStatements = lruMap();
+	}
+
+	/**
+	 * Gets a prepared statement for sql, reusing the cached one if it is not already in use
+	 * @param sql jdbc sql
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS, Statement.NO_GENERATED_KEYS or -1 if not specified
+	 * @return the prepared statement
+	 * @throws SQLException thrown if the statement can not be prepared
+	 */
+	public synchronized PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		boolean keys = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS;
+		Map<String, CachedStatement> cache = keys ? keyStatements : statements;
+
+		CachedStatement cached = cache.get(sql);
+		if (cached != null && !cached.inUse) {
+			hits.incrementAndGet();
+			return cached.checkout();
+		}
+
+		misses.incrementAndGet();
+		PreparedStatement statement = keys ? physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS) : physical.prepareStatement(sql);
+		if (cached != null) return statement;	//Cached one is busy, e.g. an open lazy result set; hand out a plain statement
+
+		if (statement.isWrapperFor(PGStatement.class)) statement.unwrap(PGStatement.class).setPrepareThreshold(1);
+		cached = new CachedStatement(statement);
+		cache.put(sql, cached);
+		return cached.checkout();
+	}
+
+	/**
+	 * Closes every cached statement
+	 */
+	public synchronized void close() {
+		for (CachedStatement cached : statements.values()) cached.closeStatement();
+		for (CachedStatement cached : keyStatements.values()) cached.closeStatement();
+		statements.clear();
+		keyStatements.clear();
+	}
+
+	/**
+	 * Gets number of statements held open
+	 * @return the number of cached statements
+	 */
+	public synchronized int size() {
+		return statements.size() + keyStatements.size();
+	}
+
+	/**
+	 * Builds an access ordered map that closes the least recently used statement when full
+	 */
+	private Map<String, CachedStatement> lruMap() {
+		return new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+				if (size() <= capacity) return false;
+				if (eldest.getValue().inUse) eldest.getValue().evicted = true;	//Closed when it is returned
+				else eldest.getValue().closeStatement();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Cached statement and the handle callers use to return it
+	 */
+	private class CachedStatement implements InvocationHandler {
+		private final PreparedStatement statement;
+		private final PreparedStatement handle;
+		private boolean inUse;
+		private boolean evicted;
+
+		private CachedStatement(PreparedStatement statement) {
+			this.statement = statement;
+			this.handle = (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(), new Class<?>[] {PreparedStatement.class}, this);
+		}
+
+		private PreparedStatement checkout() {
+			inUse = true;
+			return handle;
+		}
+
+		private void closeStatement() {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				System.out.println(e);
+			}
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				synchronized (StatementCache.this) {
+					if (!inUse) return null;
+					inUse = false;
+					if (evicted) closeStatement();
+					else {
+						statement.clearParameters();
+						statement.clearBatch();
+					}
+				}
+				return null;
+			case "isClosed":
+				return !inUse;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "Cached " + statement;
+			case "unwrap":
+			case "isWrapperFor":
+				break;
+			default:
+				if (!inUse) throw new SQLException("Statement is closed");
+			}
+
+			try {
+				return method.invoke(statement, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,49 @@
+import java.io.File;
+
+/**
+ * Compares the cost of parsing and verifying a JWT with a compact token. Both paths are measured without the verified token
+ * cache, as on the first request that presents a token. Keys are created in a temporary keystore, so no database is needed.
+ *
+ * Usage: TokenBenchmark [iterations]
+ */
+public class TokenBenchmark {
+	private static final int DEFAULT_ITERATIONS = 200000;
+
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		File keystore = File.createTempFile("benchmark", ".jceks");
+		keystore.delete();		//KeyRing creates the keystore
+		KeyRing keys = new KeyRing(keystore, new char[0]);
+		ScoutTrackToken token = new ScoutTrackToken(keys.signer(), keys.signingKeyID(), 42, ScoutTrackToken.LEADER_TYPE);
+		String jwt = token.getSerialToken();
+		String compact = token.getCompactToken(keys.signingKey(), keys.signingKeyNumber());
+		System.out.println("JWT (" + jwt.length() + " characters): " + jwt);
+		System.out.println("Compact (" + compact.length() + " characters): " + compact);
+
+		for (int round = 0; round < 3; round++) {		//The first rounds warm up the JIT
+			System.out.println("Round " + (round + 1));
+			measure("  JWT", keys, jwt, iterations);
+			measure("  Compact", keys, compact, iterations);
+		}
+
+		new File(keystore.getPath() + ".lock").delete();
+		keystore.delete();
+	}
+
+	/**
+	 * Inspects one token repeatedly and prints time and allocation per inspection
+	 */
+	private static void measure(String name, KeyRing keys, String tokenString, int iterations) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long checksum = 0;
+		long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) checksum += TokenManager.inspect(keys, tokenString).getId();
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+		System.out.println(String.format("%s: %.0f ns, %d bytes allocated per token (checksum %d)", name,
+				(double) elapsed / iterations, allocated / iterations, checksum));
+	}
+}
@@ -0,0 +1,96 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tokens that have already been verified, keyed by a SHA-256 digest of the serialized token so the token itself is not kept.
+ * An entry is dropped once its token expires. When the cache is full, expired entries are swept and, if that is not enough,
+ * arbitrary entries are evicted; an evicted token is simply verified again on its next use.
+ */
+public class TokenCache {
+	private final ConcurrentHashMap<ByteBuffer, TokenPrincipal> entries = new ConcurrentHashMap<ByteBuffer, TokenPrincipal>();
+	private final int capacity;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);		//Every Java platform provides SHA-256
+		}
+	});
+
+	/**
+	 * Constructs TokenCache
+	 * @param capacity maximum number of tokens held
+	 */
+	public TokenCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Looks up a verified token
+	 * @param tokenString the serialized token
+	 * @return the token's principal, or null if the token has not been verified or has expired
+	 */
+	public TokenPrincipal get(String tokenString) {
+		ByteBuffer key = digest(tokenString);
+		TokenPrincipal principal = entries.get(key);
+		if (principal != null && principal.getExpiresAt() <= System.currentTimeMillis()) {
+			entries.remove(key, principal);
+			principal = null;
+		}
+		if (principal == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return principal;
+	}
+
+	/**
+	 * Stores a token that passed verification
+	 * @param tokenString the serialized token
+	 * @param principal the token's principal
+	 */
+	public void put(String tokenString, TokenPrincipal principal) {
+		if (entries.size() >= capacity) evict();
+		entries.put(digest(tokenString), principal);
+	}
+
+	/**
+	 * Removes a token, e.g. after it was revoked
+	 * @param tokenString the serialized token
+	 */
+	public void remove(String tokenString) {
+		entries.remove(digest(tokenString));
+	}
+
+	/**
+	 * Gets hit and miss counts of the cache
+	 * @return the cache's statistics
+	 */
+	public CacheStats getStats() {
+		return new CacheStats("verified tokens", hits.get(), misses.get(), entries.size());
+	}
+
+	/**
+	 * Drops expired tokens, then arbitrary ones until a tenth of the capacity is free
+	 */
+	private void evict() {
+		long now = System.currentTimeMillis();
+		entries.values().removeIf(principal -> principal.getExpiresAt() <= now);
+
+		Iterator<ByteBuffer> keys = entries.keySet().iterator();
+		while (entries.size() > capacity - capacity / 10 && keys.hasNext()) {
+			keys.next();
+			keys.remove();
+		}
+	}
+
+	private static ByteBuffer digest(String tokenString) {
+		return ByteBuffer.wrap(SHA256.get().digest(tokenString.getBytes(StandardCharsets.UTF_8)));
+	}
+}
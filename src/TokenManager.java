@@ -1,3 +1,5 @@
+import java.security.GeneralSecurityException;
+import java.sql.ResultSet;
 import java.text.ParseException;
 import java.util.Date;
 
@@ -8,36 +10,65 @@ import org.sql2o.Sql2oException;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.KeyLengthException;
-import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 
 public class TokenManager extends DatabaseSearcher {
-	public final byte[] SECRET_KEY;
+	private static final int TOKEN_CACHE_SIZE = Integer.getInteger("scouttrack.tokenCache.size", 10000);
+	
 	private Sql2o sql2o;
+	private final Sql2o logins;
 	
+	private final KeyRing keys;
+	private final TokenCache verified;
+	private final RevocationStore revocations;
+	private final RefreshSessionStore sessions;
 	
 	/**
 	 * Initialize TokenManager
-	 * @param secretKey the secret key for the tokens
+	 * @param keys the keys tokens are signed and verified with
+	 * @param revocations ids of revoked access tokens
+	 * @param sessions login sessions refresh tokens belong to
 	 */
-	public TokenManager(Sql2o sql2o, byte[] secretKey) {
+	public TokenManager(Sql2o sql2o, KeyRing keys, RevocationStore revocations, RefreshSessionStore sessions) {
 		super(sql2o);
 		this.sql2o = sql2o;
-		this.SECRET_KEY = secretKey;
+		this.logins = ScopedDataSource.unscoped(sql2o);		//Credentials are read on a pooled connection of their own, see getId
+		this.keys = keys;
+		this.revocations = revocations;
+		this.sessions = sessions;
+		this.verified = new TokenCache(TOKEN_CACHE_SIZE);
 	}
 	
 	/**
-	 * Logs in user and retrieves access token
+	 * Logs in user and retrieves access and refresh tokens
 	 * @param userName user's username
 	 * @param pwd user's password
 	 * @param userType type of leader (e.g. Scout, Leader, etc.)
-	 * @return Serialized Json Access Token
+	 * @return the serialized access and refresh tokens
 	 * @throws Sql2oException throw if database error
 	 * @throws AuthenticationException thrown if login info is not valid
 	 * @throws KeyLengthException thrown if key is not long enough
 	 * @throws JOSEException thrown if error in creating token
 	 */
-	public String getToken(String email, String pwd, int userType) throws Sql2oException, AuthenticationException, KeyLengthException, JOSEException {
+	public TokenPair getToken(String email, String pwd, int userType) throws Sql2oException, AuthenticationException, KeyLengthException, JOSEException {
+		return getToken(email, pwd, userType, false);
+	}
+	
+	/**
+	 * Logs in user and retrieves access and refresh tokens in the chosen format
+	 * @param userName user's username
+	 * @param pwd user's password
+	 * @param userType type of leader (e.g. Scout, Leader, etc.)
+	 * @param compact true for compact binary tokens (see BinaryToken), false for JWTs
+	 * @return the serialized access and refresh tokens
+	 * @throws Sql2oException throw if database error
+	 * @throws AuthenticationException thrown if login info is not valid
+	 * @throws KeyLengthException thrown if key is not long enough
+	 * @throws JOSEException thrown if error in creating token
+	 * @throws ServerBusyException thrown if too many logins are waiting for their password to be checked
+	 */
+	public TokenPair getToken(String email, String pwd, int userType, boolean compact) throws Sql2oException, AuthenticationException, KeyLengthException, JOSEException {
 		int id;
 		try {
 			if(userType == ScoutTrackToken.SCOUT_TYPE) id =  getId(email, pwd, DatabaseNames.SCOUT_TABLE);
@@ -46,8 +77,48 @@ public class TokenManager extends DatabaseSearcher {
 		} catch(NoRecordFoundException e) {
 			throw new AuthenticationException();
 		}
-		ScoutTrackToken token = new ScoutTrackToken(SECRET_KEY, id, userType);
-		return token.getSerialToken();
+		while (true) {
+			long session = RefreshSessionStore.newSession();
+			ScoutTrackToken refresh = new ScoutTrackToken(keys.signer(), keys.signingKeyID(), id, userType, RefreshSessionStore.jti(session, 0));
+			if (sessions.open(session, refresh.getExpiration().getTime())) return issueTokens(id, userType, refresh, compact);	//Else the random session id is taken, pick another
+		}
+	}
+	
+	/**
+	 * Exchanges a refresh token for new access and refresh tokens. The token's session moves to the next generation, so each
+	 * refresh token can be used once, and no user record is read: the token itself proves the login. The new tokens have the
+	 * refresh token's format.
+	 * @param tokenString the serialized refresh token
+	 * @return the serialized access and refresh tokens
+	 * @throws ParseException thrown if JWT can not be parsed
+	 * @throws AuthenticationException thrown if the token is not a valid, unused refresh token
+	 * @throws JOSEException thrown if error in creating token
+	 * @throws Sql2oException thrown if database error
+	 */
+	public TokenPair renewToken(String tokenString) throws ParseException, AuthenticationException, JOSEException, Sql2oException {
+		TokenPrincipal principal = verify(tokenString);
+		if (!principal.isRefresh()) throw new AuthenticationException();
+		long session = RefreshSessionStore.session(principal.getJti());
+		int generation = RefreshSessionStore.generation(principal.getJti());
+		ScoutTrackToken refresh = new ScoutTrackToken(keys.signer(), keys.signingKeyID(), principal.getId(), principal.getType(),
+				RefreshSessionStore.jti(session, generation + 1));
+		if (!sessions.advance(session, generation, refresh.getExpiration().getTime())) throw new AuthenticationException();	//Already renewed, or logged out
+		verified.remove(tokenString);
+		return issueTokens(principal.getId(), principal.getType(), refresh, BinaryToken.isCompact(tokenString));
+	}
+	
+	/**
+	 * Signs a new access token for a user and serializes it with the session's next refresh token
+	 */
+	private TokenPair issueTokens(int id, int userType, ScoutTrackToken refresh, boolean compact) throws KeyLengthException, JOSEException {
+		ScoutTrackToken access = new ScoutTrackToken(keys.signer(), keys.signingKeyID(), id, userType, false);
+		if (!compact) return new TokenPair(access.getSerialToken(), refresh.getSerialToken(), access.getExpiration().getTime());
+		try {
+			return new TokenPair(access.getCompactToken(keys.signingKey(), keys.signingKeyNumber()),
+					refresh.getCompactToken(keys.signingKey(), keys.signingKeyNumber()), access.getExpiration().getTime());
+		} catch (GeneralSecurityException e) {
+			throw new JOSEException("Compact token can not be signed", e);
+		}
 	}
 	
 	/**
@@ -59,7 +130,7 @@ public class TokenManager extends DatabaseSearcher {
 	 * @throws JOSEException thrown if encryption fails
 	 */
 	public int authenticateScout(String tokenString) throws ParseException, AuthenticationException, JOSEException {
-		return authenticate(tokenString, ScoutTrackToken.SCOUT_TYPE);
+		return authenticateUser(tokenString, ScoutTrackToken.SCOUT_TYPE).getId();
 	}
 	
 	/**
@@ -71,7 +142,7 @@ public class TokenManager extends DatabaseSearcher {
 	 * @throws JOSEException thrown if encryption fails
 	 */
 	public int authenticateLeader(String tokenString) throws ParseException, AuthenticationException, JOSEException {
-		return authenticate(tokenString, ScoutTrackToken.LEADER_TYPE);
+		return authenticateUser(tokenString, ScoutTrackToken.LEADER_TYPE).getId();
 	}
 	
 	/**
@@ -85,59 +156,198 @@ public class TokenManager extends DatabaseSearcher {
 	 * @throws Sql2oException thrown if database error occurs
 	 */
 	public int authenticateTroopLeader(String tokenString, int troopID) throws ParseException, AuthenticationException, JOSEException, Sql2oException, NoRecordFoundException {
-		int leaderID = authenticate(tokenString, ScoutTrackToken.LEADER_TYPE);
+		int leaderID = authenticateUser(tokenString, ScoutTrackToken.LEADER_TYPE).getId();
+		authorizeTroop(leaderID, troopID);
+		return leaderID;
+	}
+	
+	/**
+	 * Checks leader is member of the troop
+	 * @param leaderID the id of the leader
+	 * @param troopID the id of the troop
+	 * @throws AuthenticationException thrown if the leader does not lead the troop
+	 * @throws Sql2oException thrown if database error occurs
+	 */
+	public void authorizeTroop(int leaderID, int troopID) throws AuthenticationException, Sql2oException {
 		try {
-			if(super.queryInt(DatabaseNames.LEADER_TABLE, "troopid", leaderID) != troopID) throw new AuthenticationException(); //Should I just make an additional claim? I think probably no b/c I can't revoke the jwt.
+			if(LeaderTroopCache.troopOf(this, leaderID) != troopID) throw new AuthenticationException(); //Should I just make an additional claim? I think probably no b/c I can't revoke the jwt.
 		} catch (NoRecordFoundException e) {
 			throw new AuthenticationException(); // thrown because leader no longer exists in database (was deleted) and no longer has access to troop.
 		}
-		return leaderID;
 	}
 	
 	/**
-	 * Authenticates JWT of passed type
+	 * Revokes a token so it is no longer accepted, whatever type of user it was issued to. Revoking a refresh token ends its
+	 * login session, so no refresh token of the session can be renewed.
 	 * @param tokenString the serialized JWT
+	 * @throws ParseException thrown if JWT can not be parsed
+	 * @throws AuthenticationException thrown if the token is not valid (or already revoked)
+	 * @throws JOSEException thrown if encryption fails
+	 * @throws Sql2oException thrown if database error
+	 */
+	public void revokeToken(String tokenString) throws ParseException, AuthenticationException, JOSEException, Sql2oException {
+		TokenPrincipal principal = verify(tokenString);
+		if (principal.isRefresh()) sessions.close(RefreshSessionStore.session(principal.getJti()));
+		else if (!revocations.revoke(principal.getJti(), principal.getExpiresAt())) throw new AuthenticationException();	//Revoked by a concurrent logout
+		verified.remove(tokenString);
+	}
+	
+	/**
+	 * Gets hit and miss counts of the verified token cache
+	 * @return the cache's statistics
+	 */
+	public CacheStats getCacheStats() {
+		return verified.getStats();
+	}
+	
+	/**
+	 * Authenticates access token of passed type. Tokens that were already verified are answered from the cache until they expire.
+	 * @param tokenString the serialized token
 	 * @param userType type of user
-	 * @return id of the user
+	 * @return the user the token was issued to
 	 * @throws ParseException thrown if JWT can not be parsed
 	 * @throws AuthenticationException thrown if authentication fails
 	 * @throws JOSEException thrown if encryption fails
 	 */
-	private int authenticate(String tokenString, int userType) throws ParseException, AuthenticationException, JOSEException {
-		SignedJWT token = SignedJWT.parse(tokenString);
-		if (!inspectSignature(token)) throw new AuthenticationException();
-		if (token.getJWTClaimsSet().getIntegerClaim("typ") != userType) throw new AuthenticationException();
-		return token.getJWTClaimsSet().getIntegerClaim("id");
+	public TokenPrincipal authenticateUser(String tokenString, int userType) throws ParseException, AuthenticationException, JOSEException {
+		TokenPrincipal principal = verify(tokenString);
+		if (principal.getType() != userType || principal.isRefresh()) throw new AuthenticationException();
+		return principal;
 	}
 	
 	/**
-	 * Inspects the signature and expiration time of a ScoutTrack-issued JWT
+	 * Authenticates access token issued to any type of user
+	 * @param tokenString the serialized token
+	 * @return the user the token was issued to
+	 * @throws ParseException thrown if JWT can not be parsed
+	 * @throws AuthenticationException thrown if authentication fails
+	 * @throws JOSEException thrown if encryption fails
+	 */
+	public TokenPrincipal authenticateUser(String tokenString) throws ParseException, AuthenticationException, JOSEException {
+		TokenPrincipal principal = verify(tokenString);
+		if (principal.isRefresh()) throw new AuthenticationException();
+		return principal;
+	}
+	
+	/**
+	 * Verifies a JWT or compact token, answering from the cache if it was already verified, and checks it was not revoked
+	 * @param tokenString the serialized token
+	 * @return the user the token was issued to
+	 * @throws ParseException thrown if JWT can not be parsed
+	 * @throws AuthenticationException thrown if authentication fails
+	 * @throws JOSEException thrown if encryption fails
+	 */
+	private TokenPrincipal verify(String tokenString) throws ParseException, AuthenticationException, JOSEException {
+		if (tokenString == null) throw new AuthenticationException();
+		TokenPrincipal principal = verified.get(tokenString);
+		if (principal == null) {
+			principal = inspect(keys, tokenString);
+			verified.put(tokenString, principal);
+		}
+		if (revocations.isRevoked(principal.getJti())) throw new AuthenticationException();
+		return principal;
+	}
+	
+	/**
+	 * Inspects the signature and expiration time of a token in either format, without consulting the cache or revocations
+	 * @param keys the keys tokens are signed with
+	 * @param tokenString the serialized JWT or compact token
+	 * @return the user the token was issued to
+	 * @throws AuthenticationException thrown if the token is not valid
+	 * @throws ParseException thrown if token parsing fails
+	 * @throws JOSEException thrown if decryption fails
+	 */
+	static TokenPrincipal inspect(KeyRing keys, String tokenString) throws AuthenticationException, ParseException, JOSEException {
+		if (BinaryToken.isCompact(tokenString)) return BinaryToken.inspect(keys, tokenString);
+		return inspectSignature(keys, SignedJWT.parse(tokenString));
+	}
+	
+	/**
+	 * Inspects the signature and expiration time of a ScoutTrack-issued JWT. The signature is checked with the key named by the
+	 * token's kid header, so tokens signed by any key still in the key ring are accepted.
+	 * @param keys the keys tokens are signed with
 	 * @param token the token to inspect
-	 * @return true if the token is valid, else false
+	 * @return the user the token was issued to
+	 * @throws AuthenticationException thrown if the token is not valid
 	 * @throws ParseException thrown if token parsing fails
 	 * @throws JOSEException thrown if decryption fails
 	 */
-	private boolean inspectSignature(SignedJWT token) throws ParseException, JOSEException {
-		JWSVerifier verifier = new MACVerifier(SECRET_KEY);
-		if(!token.verify(verifier)) return false;											//Check signature
-		if(new Date().before(token.getJWTClaimsSet().getExpirationTime())) return false;	//Check expiration
-		return true;
+	private static TokenPrincipal inspectSignature(KeyRing keys, SignedJWT token) throws AuthenticationException, ParseException, JOSEException {
+		JWSVerifier verifier = keys.verifier(token.getHeader().getKeyID());
+		if(verifier == null || !token.verify(verifier)) throw new AuthenticationException();	//Check signature
+		
+		JWTClaimsSet claims = token.getJWTClaimsSet();
+		Date expiration = claims.getExpirationTime();
+		if(expiration == null || !expiration.after(new Date())) throw new AuthenticationException();	//Check expiration
+		
+		Integer id = claims.getIntegerClaim("usr");
+		Integer type = claims.getIntegerClaim("typ");
+		if(id == null || type == null || claims.getJWTID() == null) throw new AuthenticationException();
+		try {
+			boolean refresh = ScoutTrackToken.REFRESH_USE.equals(claims.getStringClaim("use"));	//Tokens issued before refresh tokens existed are access tokens
+			return new TokenPrincipal(id, type, Long.parseUnsignedLong(claims.getJWTID(), 16), expiration.getTime(), refresh);
+		} catch (NumberFormatException e) {
+			throw new AuthenticationException();
+		}
 	}
 	
 	/**
-	 * Retrieves user's id from database given username and password hash
-	 * @param userName user name of the user
-	 * @param pwd pwd hash of the user (not plaintext)
+	 * Retrieves user's id from database given email and password. The password is checked against the stored hash on the
+	 * password hashing pool, and a stored hash that is outdated is replaced once the password is known to be right. Both
+	 * use plain pooled connections rather than the request's, so no connection is held while a password is hashed.
+	 * @param email email of the user
+	 * @param pwd password of the user as sent by the client
 	 * @param table name of the table to search
-	 * @return the id of the user with passed name and password hash
-	 * @throws NoRecordFoundException thrown if no user with that name and password hash is found
+	 * @return the id of the user with passed email and password
+	 * @throws NoRecordFoundException thrown if no user with that email and password is found
 	 * @throws Sql2oException thrown if database error occurs
+	 * @throws ServerBusyException thrown if too many passwords are being hashed
 	 */
-	private int getId(String email, String pwd, String table) throws NoRecordFoundException, Sql2oException {
-		String sql = "SELECT id FROM " + table + " WHERE usr=:usr AND pwd=:pwd"; 
-		Connection conn = sql2o.open();
-		String response = conn.createQuery(sql).addParameter("email", email).addParameter("pwd", pwd).executeAndFetchFirst(String.class);
-		if (response == null) throw new NoRecordFoundException();
-		return Integer.parseInt(response);
+	private int getId(String email, String pwd, String table) throws NoRecordFoundException, Sql2oException, ServerBusyException {
+		if (email == null || pwd == null) throw new NoRecordFoundException();
+		String sql = "SELECT id, pwd, salt FROM " + table + " WHERE email=:email";
+		Credentials credentials;
+		try (Connection conn = logins.open()) {		//Returned to the pool before the password is checked
+			credentials = conn.createQuery(sql).addParameter("email", email)
+					.executeAndFetchFirst((ResultSet rs) -> new Credentials(rs.getInt("id"), rs.getString("pwd"), rs.getBytes("salt")));
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		if (credentials == null) {
+			PasswordHasher.verifyAbsent(pwd);		//As slow as a wrong password
+			throw new NoRecordFoundException();
+		}
+		if (!PasswordHasher.verify(pwd, credentials.salt, credentials.pwd)) throw new NoRecordFoundException();
+		
+		if (PasswordHasher.needsRehash(credentials.pwd)) {
+			try {
+				String rehashed = PasswordHasher.hash(pwd, credentials.salt);
+				String update = "UPDATE " + table + " SET pwd=:pwd WHERE id=:id AND pwd=:old";	//Unless the password changed meanwhile
+				try (Connection conn = logins.beginTransaction()) {
+					conn.createQuery(update).addParameter("pwd", rehashed).addParameter("id", credentials.id)
+							.addParameter("old", credentials.pwd).executeUpdate();
+					conn.commit();
+				}
+			} catch (ServerBusyException | Sql2oException e) {
+				System.out.println(e);		//The login still succeeds, the hash is replaced on a later login
+			}
+		}
+		return credentials.id;
+	}
+	
+	/**
+	 * Stored login of one user
+	 */
+	private static class Credentials {
+		private final int id;
+		private final String pwd;
+		private final byte[] salt;
+		
+		private Credentials(int id, String pwd, byte[] salt) {
+			this.id = id;
+			this.pwd = pwd;
+			this.salt = salt;
+		}
 	}
 }
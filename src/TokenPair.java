@@ -0,0 +1,46 @@
+
+/**
+ * Tokens returned by a login or renewal: a short lived access token used on every request and a refresh token that can be
+ * exchanged once for a new pair
+ */
+public class TokenPair {
+	private final String access;
+	private final String refresh;
+	private final long expiresAt;
+
+	/**
+	 * Constructs TokenPair
+	 * @param access the serialized access token
+	 * @param refresh the serialized refresh token
+	 * @param expiresAt time the access token expires in milliseconds since the epoch
+	 */
+	public TokenPair(String access, String refresh, long expiresAt) {
+		this.access = access;
+		this.refresh = refresh;
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * Gets the access token
+	 * @return the serialized access token
+	 */
+	public String getAccess() {
+		return access;
+	}
+
+	/**
+	 * Gets the refresh token
+	 * @return the serialized refresh token
+	 */
+	public String getRefresh() {
+		return refresh;
+	}
+
+	/**
+	 * Gets time the access token expires
+	 * @return expiration time in milliseconds since the epoch
+	 */
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+}
@@ -0,0 +1,67 @@
+
+/**
+ * The user a verified token was issued to
+ */
+public class TokenPrincipal {
+	private final int id;
+	private final int type;
+	private final long jti;
+	private final long expiresAt;
+	private final boolean refresh;
+
+	/**
+	 * Constructs TokenPrincipal
+	 * @param id user's id (from database)
+	 * @param type user's account type (ScoutTrackToken.SCOUT_TYPE, ScoutTrackToken.LEADER_TYPE)
+	 * @param jti id of the token
+	 * @param expiresAt time the token expires in milliseconds since the epoch
+	 * @param refresh true if the token is a refresh token
+	 */
+	public TokenPrincipal(int id, int type, long jti, long expiresAt, boolean refresh) {
+		this.id = id;
+		this.type = type;
+		this.jti = jti;
+		this.expiresAt = expiresAt;
+		this.refresh = refresh;
+	}
+
+	/**
+	 * Gets user's id
+	 * @return the id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets user's account type
+	 * @return the type
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Gets id of the token
+	 * @return the token's jti
+	 */
+	public long getJti() {
+		return jti;
+	}
+
+	/**
+	 * Gets time the token expires
+	 * @return expiration time in milliseconds since the epoch
+	 */
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	/**
+	 * Checks if the token can only be used to renew tokens
+	 * @return true for a refresh token, false for an access token
+	 */
+	public boolean isRefresh() {
+		return refresh;
+	}
+}
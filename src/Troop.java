@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.List;
 
 import org.sql2o.Connection;
@@ -6,8 +7,13 @@ import org.sql2o.Sql2oException;
 
 public class Troop extends DatabaseSearcher implements DatabaseObject{
 	
+	//Marks one requirement or merit badge for the listed scouts of a troop that don't have it yet, returning those scouts
+	private final static String SIGN_OFF_REQ_SQL = signOffSql(DatabaseNames.SCOUT_REQ_TABLE, "reqid");
+	private final static String SIGN_OFF_MB_SQL = signOffSql(DatabaseNames.SCOUT_MB_TABLE, "meritbadgeid");
+	
 	private int id;
 	private Sql2o sql2o;
+	private String name;		//Loaded on first use
 	
 	/**
 	 * Constructs new Troop but doesn't any data in database
@@ -48,7 +54,8 @@ public class Troop extends DatabaseSearcher implements DatabaseObject{
 	 * @throws Sql2oException thrown if database error
 	 */
 	public String queryName() throws Sql2oException, NoRecordFoundException {
-		return super.queryString(DatabaseNames.TROOP_TABLE, "name", id);
+		if (name == null) name = super.queryString(DatabaseNames.TROOP_TABLE, "name", id);
+		return name;
 	}
 	
 	/**
@@ -58,6 +65,7 @@ public class Troop extends DatabaseSearcher implements DatabaseObject{
 	 */
 	public void updateName(String name) throws Sql2oException {
 		super.updateString(DatabaseNames.TROOP_TABLE, "name", name, id);
+		this.name = name;
 	}
 	
 	/**
@@ -67,7 +75,7 @@ public class Troop extends DatabaseSearcher implements DatabaseObject{
 	 * @throws Sql2oException thrown if database error
 	 */
 	public List <Integer> queryScouts() throws Sql2oException, NoRecordFoundException {
-		return super.searchIds(DatabaseNames.SCOUT_TABLE, "id", id);
+		return super.searchIds(DatabaseNames.SCOUT_TABLE, "troopid", id);
 	}
 	
 	/**
@@ -77,7 +85,67 @@ public class Troop extends DatabaseSearcher implements DatabaseObject{
 	 * @throws Sql2oException  thrown if database error
 	 */
 	public List <Integer> queryLeaders() throws Sql2oException, NoRecordFoundException {
-		return super.searchIds(DatabaseNames.LEADER_TABLE, "id", id);
+		return super.searchIds(DatabaseNames.LEADER_TABLE, "troopid", id);
+	}
+	
+	/**
+	 * Signs off a requirement for many scouts of the troop with one statement. Scouts not in the troop, and scouts that
+	 * already completed the requirement, are left unchanged.
+	 * @param reqName name of the requirement
+	 * @param rank name of the requirement's rank
+	 * @param scoutIDs ids of the scouts
+	 * @return ids of the scouts the requirement was added to
+	 * @throws NoRecordFoundException thrown if the rank or requirement is not found
+	 * @throws Sql2oException thrown if database error
+	 */
+	public List<Integer> signOffRequirement(String reqName, String rank, List<Integer> scoutIDs) throws Sql2oException, NoRecordFoundException {
+		int reqID = super.idOfRequirement(reqName, super.idOfRank(rank));
+		List<Integer> signedOff = signOff(SIGN_OFF_REQ_SQL, reqID, scoutIDs);
+		if (!signedOff.isEmpty()) TroopDashboard.invalidateTroop(id);
+		return signedOff;
+	}
+	
+	/**
+	 * Signs off a merit badge for many scouts of the troop with one statement. Scouts not in the troop, and scouts that
+	 * already earned the merit badge, are left unchanged.
+	 * @param meritbadgeName name of the merit badge
+	 * @param scoutIDs ids of the scouts
+	 * @return ids of the scouts the merit badge was added to
+	 * @throws NoRecordFoundException thrown if the merit badge is not found
+	 * @throws Sql2oException thrown if database error
+	 */
+	public List<Integer> signOffMeritbadge(String meritbadgeName, List<Integer> scoutIDs) throws Sql2oException, NoRecordFoundException {
+		return signOff(SIGN_OFF_MB_SQL, super.idOfMeritbadge(meritbadgeName), scoutIDs);
+	}
+	
+	/**
+	 * Runs a sign off statement and bumps the response versions of the scouts it changed
+	 */
+	private List<Integer> signOff(String sql, int itemID, List<Integer> scoutIDs) throws Sql2oException {
+		List<Integer> signedOff;
+		try (Connection conn = sql2o.beginTransaction()) {
+			signedOff = super.addArrayParameter(conn, conn.createQuery(sql), "scouts", scoutIDs)
+					.addParameter("item", itemID).addParameter("troop", id).executeScalarList(Integer.class);
+			conn.commit();
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+		List<String> scouts = new ArrayList<String>(signedOff.size());
+		for (int scoutID : signedOff) scouts.add(ResponseCache.scout(scoutID));
+		ResponseCache.bumpAll(scouts);
+		return signedOff;
+	}
+	
+	/**
+	 * Builds a sign off statement for a scout join table. ON CONFLICT covers a concurrent sign off where the table has a
+	 * unique key, NOT EXISTS a table without one.
+	 */
+	private static String signOffSql(String table, String column) {
+		return "INSERT INTO " + table + " (scoutid, " + column + ") SELECT s.id, :item FROM " + DatabaseNames.SCOUT_TABLE + " s"
+				+ " WHERE s.troopid = :troop AND s.id = ANY(:scouts)"
+				+ " AND NOT EXISTS (SELECT 1 FROM " + table + " j WHERE j.scoutid = s.id AND j." + column + " = :item)"
+				+ " ON CONFLICT DO NOTHING RETURNING scoutid";
 	}
 	
 	/**
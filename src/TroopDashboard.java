@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Requirement progress of every scout in a troop as a columnar matrix, built from one aggregate query and cached per troop
+ * until a scout's progress or membership changes. The response holds the scout ids and names, a dictionary of the requirements
+ * completed by any scout, and for each scout a base64 bitset (java.util.BitSet byte order) whose bit i is set if the scout
+ * completed the i-th requirement of the dictionary.
+ */
+public class TroopDashboard {
+	private static final ConcurrentHashMap<Integer, Entry> CACHE = new ConcurrentHashMap<Integer, Entry>();
+	private static final AtomicLong generation = new AtomicLong();	//Incremented by every invalidation
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+
+	private static final String PROGRESS_SQL = "SELECT s.id, s.name, array_agg(sr.reqid ORDER BY sr.reqid) AS reqs"
+			+ " FROM " + DatabaseNames.SCOUT_TABLE + " s LEFT JOIN " + DatabaseNames.SCOUT_REQ_TABLE + " sr ON sr.scoutid = s.id"
+			+ " WHERE s.troopid = :troop GROUP BY s.id, s.name ORDER BY s.id";
+
+	/**
+	 * Gets a troop's progress matrix as Json
+	 * @param sql2o the Sql2o database object
+	 * @param troopID id of the troop
+	 * @return the matrix
+	 * @throws Sql2oException thrown if database error
+	 */
+	public static String query(Sql2o sql2o, int troopID) throws Sql2oException {
+		Entry entry = CACHE.get(troopID);
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry.json;
+		}
+		misses.incrementAndGet();
+
+		long seen = generation.get();
+		entry = load(sql2o, troopID);
+		if (generation.get() == seen) CACHE.put(troopID, entry);	//Don't cache a matrix that may predate a write
+		return entry.json;
+	}
+
+	/**
+	 * Drops a troop's matrix, now and again when the current request's transaction ends
+	 * @param troopID id of the troop
+	 */
+	public static void invalidateTroop(int troopID) {
+		removeTroop(troopID);
+		RequestScope scope = RequestScope.current();
+		if (scope != null) scope.onEnd(() -> removeTroop(troopID));
+	}
+
+	/**
+	 * Drops the matrix of the troop a scout is in, now and again when the current request's transaction ends
+	 * @param scoutID id of the scout
+	 */
+	public static void invalidateScout(int scoutID) {
+		removeScout(scoutID);
+		RequestScope scope = RequestScope.current();
+		if (scope != null) scope.onEnd(() -> removeScout(scoutID));
+	}
+
+	/**
+	 * Gets hit and miss counts of the cache
+	 * @return the cache's statistics
+	 */
+	public static CacheStats getStats() {
+		return new CacheStats("troop dashboards", hits.get(), misses.get(), CACHE.size());
+	}
+
+	private static void removeTroop(int troopID) {
+		generation.incrementAndGet();
+		CACHE.remove(troopID);
+	}
+
+	private static void removeScout(int scoutID) {
+		generation.incrementAndGet();
+		CACHE.values().removeIf(entry -> Arrays.binarySearch(entry.scoutIDs, scoutID) >= 0);
+	}
+
+	/**
+	 * Runs the aggregate query and encodes the matrix
+	 */
+	private static Entry load(Sql2o sql2o, int troopID) throws Sql2oException {
+		List<Row> rows;
+		try (Connection conn = sql2o.open()) {
+			rows = conn.createQuery(PROGRESS_SQL).addParameter("troop", troopID).executeAndFetch((ResultSet rs) -> {
+				Array reqs = rs.getArray("reqs");
+				return new Row(rs.getInt("id"), rs.getString("name"), reqs == null ? new Integer[0] : (Integer[]) reqs.getArray());
+			});
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+
+		TreeSet<Integer> reqIDs = new TreeSet<Integer>();
+		for (Row row : rows) {
+			for (Integer reqID : row.reqs) if (reqID != null) reqIDs.add(reqID);		//LEFT JOIN gives {NULL} to scouts without requirements
+		}
+		int[] dictionary = new int[reqIDs.size()];
+		int i = 0;
+		for (int reqID : reqIDs) dictionary[i++] = reqID;
+
+		int[] scoutIDs = new int[rows.size()];
+		StringWriter json = new StringWriter();
+		try {
+			JsonWriter out = new JsonWriter(json);
+			Catalog catalog = Catalog.current();
+			out.beginObject();
+			out.name("troop").value(troopID);
+
+			out.name("scouts").beginArray();
+			for (i = 0; i < scoutIDs.length; i++) {
+				scoutIDs[i] = rows.get(i).id;
+				out.value(scoutIDs[i]);
+			}
+			out.endArray();
+			out.name("names").beginArray();
+			for (Row row : rows) out.value(row.name);
+			out.endArray();
+
+			out.name("req").beginArray();
+			for (int reqID : dictionary) out.value(reqID);
+			out.endArray();
+			if (catalog != null) {
+				RequirementObject[] reqs = new RequirementObject[dictionary.length];
+				for (i = 0; i < reqs.length; i++) reqs[i] = requirement(catalog, dictionary[i]);
+				out.name("reqName").beginArray();
+				for (RequirementObject req : reqs) out.value(req == null ? null : req.getName());
+				out.endArray();
+				out.name("reqRank").beginArray();
+				for (RequirementObject req : reqs) out.value(req == null ? null : req.getRank());
+				out.endArray();
+			}
+
+			out.name("progress").beginArray();
+			Base64.Encoder base64 = Base64.getEncoder();
+			for (Row row : rows) {
+				BitSet bits = new BitSet(dictionary.length);
+				for (Integer reqID : row.reqs) if (reqID != null) bits.set(Arrays.binarySearch(dictionary, reqID));
+				out.value(base64.encodeToString(bits.toByteArray()));
+			}
+			out.endArray();
+			out.endObject();
+			out.close();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);		//StringWriter does not throw
+		}
+		return new Entry(json.toString(), scoutIDs);
+	}
+
+	private static RequirementObject requirement(Catalog catalog, int reqID) {
+		try {
+			return catalog.requirement(reqID);
+		} catch (NoRecordFoundException e) {
+			return null;	//Added after the catalog was loaded
+		}
+	}
+
+	/**
+	 * Cached matrix and the (sorted) ids of the scouts in it
+	 */
+	private static class Entry {
+		private final String json;
+		private final int[] scoutIDs;
+
+		private Entry(String json, int[] scoutIDs) {
+			this.json = json;
+			this.scoutIDs = scoutIDs;
+		}
+	}
+
+	/**
+	 * Row of the aggregate query
+	 */
+	private static class Row {
+		private final int id;
+		private final String name;
+		private final Integer[] reqs;
+
+		private Row(int id, String name, Integer[] reqs) {
+			this.id = id;
+			this.name = name;
+			this.reqs = reqs;
+		}
+	}
+}
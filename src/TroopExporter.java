@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Exports the advancement of every scout in a troop as a roster. Requirements and merit badges are encoded as RosterImporter
+ * reads them, but an export is not an importable roster: it has an id column and no passwords, which RosterImporter requires.
+ * Rows are read through a server side cursor a fetch at a time and written as they arrive, so the export never holds more
+ * than one fetch of scouts in memory.
+ */
+public class TroopExporter {
+	private static final int FETCH_SIZE = 500;
+	private static final String[] CSV_HEADER = {"id", "name", "email", "age", "rank", "req", "mb"};
+	private static final String EXPORT_SQL = "SELECT s.id, s.name, s.email, s.age, rk.name AS rank"
+			+ ", ARRAY(SELECT qr.name || ':' || rq.name FROM " + DatabaseNames.SCOUT_REQ_TABLE + " sr JOIN " + DatabaseNames.REQ_TABLE + " rq ON rq.id = sr.reqid"
+			+ " JOIN " + DatabaseNames.RANK_TABLE + " qr ON qr.id = rq.rankid WHERE sr.scoutid = s.id ORDER BY sr.reqid) AS req"
+			+ ", ARRAY(SELECT mb.name FROM " + DatabaseNames.SCOUT_MB_TABLE + " sm JOIN " + DatabaseNames.MB_TABLE + " mb ON mb.id = sm.meritbadgeid"
+			+ " WHERE sm.scoutid = s.id ORDER BY mb.name) AS mb"
+			+ " FROM " + DatabaseNames.SCOUT_TABLE + " s LEFT JOIN " + DatabaseNames.RANK_TABLE + " rk ON rk.id = s.rankid"
+			+ " WHERE s.troopid = ? ORDER BY s.id";
+
+	private final Sql2o sql2o;
+	private final int troopID;
+
+	/**
+	 * Constructs TroopExporter
+	 * @param sql2o the Sql2o database object
+	 * @param troopID id of the troop to export
+	 */
+	public TroopExporter(Sql2o sql2o, int troopID) {
+		this.sql2o = sql2o;
+		this.troopID = troopID;
+	}
+
+	/**
+	 * Writes the troop's roster
+	 * @param out writer rows are written to
+	 * @param format format of the roster
+	 * @return number of scouts written
+	 * @throws IOException thrown if the roster can not be written
+	 * @throws Sql2oException thrown if database error
+	 */
+	public long export(Writer out, RosterImporter.Format format) throws IOException, Sql2oException {
+		try (Connection conn = sql2o.beginTransaction()) {		//Cursors only exist inside a transaction
+			long written = export(conn.getJdbcConnection(), troopID, out, format);
+			conn.commit();		//Closing it uncommitted would roll back, and fail, the request's transaction
+			return written;
+		} catch (SQLException e) {
+			Sql2oException error = new Sql2oException("Error exporting troop " + troopID, e);
+			System.out.println(error);
+			throw error;
+		} catch (Sql2oException e) {
+			System.out.println(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes a troop's roster using a connection that is already in a transaction
+	 * @param conn jdbc connection with auto commit off
+	 * @param troopID id of the troop to export
+	 * @param out writer rows are written to
+	 * @param format format of the roster
+	 * @return number of scouts written
+	 * @throws SQLException thrown if database error
+	 * @throws IOException thrown if the roster can not be written
+	 */
+	public static long export(java.sql.Connection conn, int troopID, Writer out, RosterImporter.Format format) throws SQLException, IOException {
+		JsonWriter json = null;
+		if (format == RosterImporter.Format.CSV) writeCsvRow(out, CSV_HEADER);
+
+		long rows = 0;
+		try (PreparedStatement statement = conn.prepareStatement(EXPORT_SQL)) {
+			statement.setFetchSize(FETCH_SIZE);
+			statement.setInt(1, troopID);
+			try (ResultSet rs = statement.executeQuery()) {
+				while (rs.next()) {
+					String[] req = strings(rs.getArray("req"));
+					String[] mb = strings(rs.getArray("mb"));
+
+					if (format == RosterImporter.Format.CSV) {
+						writeCsvRow(out, new String[] {rs.getString("id"), rs.getString("name"), rs.getString("email"), rs.getString("age"),
+								rs.getString("rank"), String.join(";", req), String.join(";", mb)});
+					}
+					else {
+						if (json == null) json = new JsonWriter(out);
+						writeJsonRow(json, rs, req, mb);
+						json.flush();
+						out.write('\n');
+					}
+					rows++;
+				}
+			}
+		}
+		out.flush();
+		return rows;
+	}
+
+	/**
+	 * Writes the current row as one line of newline delimited Json
+	 */
+	private static void writeJsonRow(JsonWriter json, ResultSet rs, String[] req, String[] mb) throws SQLException, IOException {
+		json.beginObject();
+		json.name("id").value(rs.getInt("id"));
+		json.name("name").value(rs.getString("name"));
+		json.name("email").value(rs.getString("email"));
+		json.name("age").value(rs.getInt("age"));
+		json.name("rank").value(rs.getString("rank"));
+		json.name("req").beginArray();
+		for (String pair : req) {
+			int separator = pair.lastIndexOf(':');
+			json.beginObject();
+			json.name("rank").value(pair.substring(0, separator));
+			json.name("name").value(pair.substring(separator + 1));
+			json.endObject();
+		}
+		json.endArray();
+		json.name("mb").beginArray();
+		for (String name : mb) json.value(name);
+		json.endArray();
+		json.endObject();
+	}
+
+	/**
+	 * Writes one CSV line, quoting values that contain separators or quotes
+	 */
+	private static void writeCsvRow(Writer out, String[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) out.write(',');
+			String value = values[i] == null ? "" : values[i];
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				out.write('"');
+				out.write(value.replace("\"", "\"\""));
+				out.write('"');
+			}
+			else out.write(value);
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Converts a text array column to a String array
+	 */
+	private static String[] strings(Array array) throws SQLException {
+		if (array == null) return new String[0];
+		return (String[]) array.getArray();
+	}
+}
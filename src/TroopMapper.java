@@ -1,17 +1,22 @@
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.sql2o.Sql2o;
 
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 public class TroopMapper extends DatabaseObjectMapper {
-	private final int TROOP_NAME_LENGTH = 30;
+	public final static int TROOP_NAME_LENGTH = 30;
+	public final static int MAX_SIGN_OFF_SCOUTS = 1000;
 	
 	private final List <String> FIELDS;
 	private final String[] TROOP_FIELDS = {};
 	
-	private final JsonObject json;
+	private final JsonReader reader;
 	private final Sql2o sql2o;
 		
 	private boolean validated;
@@ -19,12 +24,12 @@ public class TroopMapper extends DatabaseObjectMapper {
 	private int[] scoutIDs;
 	
 	/**
-	 * Constructs a TroopMapper which validates Json data and maps it to a Troop object
-	 * @param json
+	 * Constructs a TroopMapper which validates a Json object while reading it
+	 * @param reader reader positioned at the Json object
 	 * @param sql2o
 	 */
-	public TroopMapper(JsonObject json, Sql2o sql2o) {	
-		this.json = json;
+	public TroopMapper(JsonReader reader, Sql2o sql2o) {
+		this.reader = reader;
 		this.sql2o = sql2o;
 		this.validated = false;
 
@@ -32,7 +37,7 @@ public class TroopMapper extends DatabaseObjectMapper {
 	}
 	
 	public TroopMapper(Sql2o sql2o) {
-		this.json = null;
+		this.reader = null;
 		this.sql2o = sql2o;
 		this.validated = false;
 		
@@ -45,14 +50,24 @@ public class TroopMapper extends DatabaseObjectMapper {
 	 * @throws NoJsonToParseException 
 	 */
 	public void validate() throws InvalidJsonDataException, NoJsonToParseException {	
-		if(json == null) throw new NoJsonToParseException();
+		if(reader == null) throw new NoJsonToParseException();
 		
-		for(String field : FIELDS) {
-			if(!json.has(field)) throw new InvalidJsonDataException();
+		Set<String> seen = new HashSet<String>();
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String field = reader.nextName();
+				if (field.equals("name")) {
+					this.name = validateName(nextString(reader, field, TROOP_NAME_LENGTH));
+					seen.add(field);
+				}
+				else reader.skipValue();
+			}
+			endDocument(reader);
+		} catch (IOException | IllegalStateException e) {
+			throw new InvalidJsonDataException();		//Malformed Json or a value of the wrong type
 		}
-		
-		this.name = json.get("name").getAsString();
-		validateName(name);
+		checkFields(FIELDS, seen);
 
 		this.validated = true;
 	}
@@ -62,6 +77,22 @@ public class TroopMapper extends DatabaseObjectMapper {
 		return name;
 	}
 	
+	/**
+	 * Validates a comma separated list of scout ids, as taken by the troop sign off routes
+	 * @param ids the list
+	 * @return the ids
+	 * @throws InvalidJsonDataException thrown if the list is missing or too long
+	 * @throws NumberFormatException thrown if an id is not a number
+	 */
+	public List<Integer> validateScoutIDs(String ids) throws InvalidJsonDataException, NumberFormatException {
+		if (ids == null || ids.isEmpty()) throw new InvalidJsonDataException("Missing scouts");
+		String[] parts = ids.split(",");
+		if (parts.length > MAX_SIGN_OFF_SCOUTS) throw new InvalidJsonDataException("More than " + MAX_SIGN_OFF_SCOUTS + " scouts");
+		List<Integer> parsed = new ArrayList<Integer>(parts.length);
+		for (String part : parts) parsed.add(Integer.parseInt(part.trim()));
+		return parsed;
+	}
+	
 	/**
 	 * Constructs Troop object and stores data in database
 	 * @return the troop object
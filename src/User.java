@@ -13,5 +13,5 @@ public interface User {
 	
 	String querySalt() throws Sql2oException, NoRecordFoundException;
 	
-	void updatePwd(String pwd) throws Sql2oException;
+	void updatePwd(String pwd) throws Sql2oException, ServerBusyException;
 }